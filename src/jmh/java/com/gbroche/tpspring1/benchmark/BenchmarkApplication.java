@@ -0,0 +1,109 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.gbroche.tpspring1.Tpspring1Application;
+import com.gbroche.tpspring1.dto.BulkImportReport;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.service.ProductImportService;
+
+/**
+ * Application context shared by the benchmarks: the real beans on a fresh
+ * in-memory database, without the web server. Controller calls are wrapped in
+ * a transaction to stand for the open-session-in-view of a real request.
+ */
+final class BenchmarkApplication implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final TransactionTemplate transaction;
+
+    BenchmarkApplication() {
+        this(WebApplicationType.NONE);
+    }
+
+    /**
+     * @param properties extra application properties, e.g. to switch execution
+     *                   modes
+     */
+    BenchmarkApplication(WebApplicationType webApplicationType, String... properties) {
+        context = new SpringApplicationBuilder(Tpspring1Application.class)
+                .web(webApplicationType)
+                .properties("spring.devtools.restart.enabled=false",
+                        "spring.autoconfigure.exclude="
+                                + "org.springframework.boot.devtools.autoconfigure.DevToolsDataSourceAutoConfiguration",
+                        "spring.jpa.show-sql=false",
+                        "server.port=0",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+        transaction = new TransactionTemplate(bean(PlatformTransactionManager.class));
+    }
+
+    int port() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    <T> T inRequest(Supplier<T> call) {
+        return transaction.execute(status -> call.get());
+    }
+
+    /**
+     * Imports {@code count} plain products through the bulk import, then
+     * bundles every pair out of {@code bundleEvery} products so listings also
+     * carry sources.
+     *
+     * @return ids of the created products, in creation order
+     */
+    List<Long> populate(int count, int bundleEvery) {
+        StringBuilder ndjson = new StringBuilder(count * 32);
+        for (int i = 0; i < count; i++) {
+            ndjson.append("{\"name\":\"p").append(i).append("\",\"price\":").append(1 + i % 100).append("}\n");
+        }
+        BulkImportReport report;
+        try {
+            report = bean(ProductImportService.class).importProducts(
+                    new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // a single importer run gets consecutive ids within each batch
+        List<Long> ids = report.batches().stream()
+                .flatMap(batch -> LongStream.rangeClosed(batch.firstId(), batch.lastId()).boxed())
+                .toList();
+        ProductRepository repository = bean(ProductRepository.class);
+        if (bundleEvery > 0) {
+            transaction.executeWithoutResult(status -> {
+                List<Product> bundles = new ArrayList<>();
+                for (int i = 1; i < ids.size(); i += bundleEvery) {
+                    bundles.add(new Product(null, "b", 2, new ArrayList<>(List.of(
+                            repository.getReferenceById(ids.get(i - 1)),
+                            repository.getReferenceById(ids.get(i))))));
+                }
+                repository.saveAll(bundles);
+            });
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,101 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.ResponseEntity;
+
+import com.gbroche.tpspring1.controller.ProductController;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.service.BundleClosureIndex;
+import com.gbroche.tpspring1.service.ProductService;
+
+/**
+ * Bundle creation and its overlap check for {@code bundleSize} components,
+ * each of them being a binary tree of bundles {@code depth} levels deep (a
+ * plain product at depth 1). The bundles created during an iteration are
+ * deleted after it, so that the parents of the components, the closure index
+ * and the table stay the same size from one iteration to the next.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BundleBenchmark {
+
+    @Param({ "2", "10", "100" })
+    private int bundleSize;
+
+    @Param({ "1", "3", "6" })
+    private int depth;
+
+    private BenchmarkApplication application;
+    private ProductController controller;
+    private BundleClosureIndex closureIndex;
+    private ProductRepository repository;
+    private ProductService productService;
+    private List<Long> componentIds;
+    private final List<Long> createdBundleIds = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication();
+        controller = application.bean(ProductController.class);
+        closureIndex = application.bean(BundleClosureIndex.class);
+        repository = application.bean(ProductRepository.class);
+        productService = application.bean(ProductService.class);
+        componentIds = application.inRequest(() -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < bundleSize; i++) {
+                ids.add(saveComponent(depth).getId());
+            }
+            return ids;
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCreatedBundles() {
+        createdBundleIds.forEach(productService::delete);
+        createdBundleIds.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public Object createBundle() {
+        ProductView bundle = application.inRequest(
+                () -> (ProductView) ((ResponseEntity<?>) controller.createBundle(componentIds)).getBody());
+        createdBundleIds.add(bundle.id());
+        return bundle;
+    }
+
+    @Benchmark
+    public boolean doesBundleRequestCauseRecursion() {
+        return application.inRequest(() -> closureIndex.anyOverlap(repository.findAllWithSourcesByIdIn(componentIds)));
+    }
+
+    private Product saveComponent(int level) {
+        if (level <= 1) {
+            return repository.save(new Product(null, "p", 1, new ArrayList<>()));
+        }
+        Product left = saveComponent(level - 1);
+        Product right = saveComponent(level - 1);
+        return repository.save(new Product(null, "b", left.getPrice() + right.getPrice(),
+                new ArrayList<>(List.of(left, right))));
+    }
+}
@@ -0,0 +1,25 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Output that only counts the bytes written to it, so that a benchmark
+ * measures the serialization and returns its size without buffering it.
+ */
+final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    long count() {
+        return count;
+    }
+}
@@ -0,0 +1,99 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.gbroche.tpspring1.service.LeafOverlapDetector;
+
+/**
+ * Overlap check of a bundle request made of several nested bundles totalling
+ * {@code leafCount} leaf products, against the previous boxed
+ * {@code HashSet<Long>} approach. The disjoint case is the worst one since
+ * every leaf has to be visited.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LeafOverlapBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    private int leafCount;
+
+    @Param({ "2", "8" })
+    private int bundleCount;
+
+    private List<long[]> disjointClosures;
+    private List<long[]> overlappingClosures;
+
+    @Setup
+    public void setUp() {
+        disjointClosures = closures(false);
+        overlappingClosures = closures(true);
+    }
+
+    @Benchmark
+    public boolean primitiveDisjoint() {
+        return LeafOverlapDetector.anyOverlap(disjointClosures);
+    }
+
+    @Benchmark
+    public boolean primitiveOverlapping() {
+        return LeafOverlapDetector.anyOverlap(overlappingClosures);
+    }
+
+    @Benchmark
+    public boolean boxedDisjoint() {
+        return boxedAnyOverlap(disjointClosures);
+    }
+
+    @Benchmark
+    public boolean boxedOverlapping() {
+        return boxedAnyOverlap(overlappingClosures);
+    }
+
+    private static boolean boxedAnyOverlap(List<long[]> closures) {
+        List<Long> leafIds = new ArrayList<>();
+        for (long[] closure : closures) {
+            for (long leafId : closure) {
+                leafIds.add(leafId);
+            }
+        }
+        Set<Long> uniqueIds = new HashSet<>(leafIds);
+        return uniqueIds.size() != leafIds.size();
+    }
+
+    /**
+     * Interleaved id ranges so no bundle can be told apart by its bounds, the
+     * overlapping variant shares the last leaf of the last bundle.
+     */
+    private List<long[]> closures(boolean overlapping) {
+        List<long[]> closures = new ArrayList<>();
+        int leavesPerBundle = leafCount / bundleCount;
+        for (int bundle = 0; bundle < bundleCount; bundle++) {
+            int offset = bundle;
+            closures.add(LongStream.range(0, leavesPerBundle)
+                    .map(i -> 1 + i * bundleCount + offset)
+                    .toArray());
+        }
+        if (overlapping) {
+            long[] last = closures.get(bundleCount - 1);
+            last[last.length - 1] = closures.get(0)[0];
+            Arrays.sort(last);
+        }
+        return closures;
+    }
+}
@@ -0,0 +1,85 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+/**
+ * Full listing, query and serialization, with the entity graph against the
+ * projected views, the latter with the generic record serializer and with the
+ * hand-written one. Run with {@code -prof gc} to get the allocations per
+ * operation ({@code gc.alloc.rate.norm}), the payload size of each variant is
+ * printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ListingSerializationBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int rows;
+
+    private BenchmarkApplication application;
+    private ProductRepository repository;
+    private ObjectMapper objectMapper;
+    private ObjectMapper genericMapper;
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private abstract static class GenericSerialization {
+    }
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication();
+        repository = application.bean(ProductRepository.class);
+        objectMapper = application.bean(ObjectMapper.class);
+        genericMapper = objectMapper.copy().addMixIn(ProductView.class, GenericSerialization.class);
+        application.populate(rows, 10);
+        System.out.printf("%nPayload bytes for %d rows: entities=%d, views=%d%n", rows, entities(), views());
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public long entities() {
+        return application.inRequest(() -> serialize(objectMapper, repository.findAllWithSources()));
+    }
+
+    @Benchmark
+    public long viewsGenericSerializer() {
+        return application.inRequest(() -> serialize(genericMapper, repository.findAllViews()));
+    }
+
+    @Benchmark
+    public long views() {
+        return application.inRequest(() -> serialize(objectMapper, repository.findAllViews()));
+    }
+
+    private static long serialize(ObjectMapper mapper, Object body) {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            mapper.writeValue(out, body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.count();
+    }
+}
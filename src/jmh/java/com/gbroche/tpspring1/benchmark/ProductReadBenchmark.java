@@ -0,0 +1,87 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gbroche.tpspring1.controller.ProductController;
+import com.gbroche.tpspring1.dto.ProductFilter;
+
+/**
+ * Listing and lookup as served by the controller, serialization included,
+ * over catalogs of growing size (1% of the rows being bundles).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductReadBenchmark {
+    private static final ProductFilter EMPTY_FILTER = new ProductFilter(null, null, null, null);
+    // no If-None-Match, every call reads and serializes
+    private static final HttpHeaders NO_HEADERS = HttpHeaders.EMPTY;
+
+    @Param({ "1000", "100000", "1000000" })
+    private int rows;
+
+    private BenchmarkApplication application;
+    private ProductController controller;
+    private ObjectMapper objectMapper;
+    private List<Long> ids;
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication();
+        controller = application.bean(ProductController.class);
+        objectMapper = application.bean(ObjectMapper.class);
+        ids = application.populate(rows, 100);
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public long getAll() {
+        return application.inRequest(
+                () -> serialize(controller.getAll(EMPTY_FILTER, Sort.unsorted(), NO_HEADERS).getBody()));
+    }
+
+    @Benchmark
+    public long getPage() {
+        return application.inRequest(
+                () -> serialize(controller.getPage(0, 100, EMPTY_FILTER, Sort.unsorted(), NO_HEADERS).getBody()));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long getById() {
+        Long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        return application.inRequest(
+                () -> serialize(((ResponseEntity<?>) controller.getById(id, NO_HEADERS)).getBody()));
+    }
+
+    private long serialize(Object body) {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            objectMapper.writeValue(out, body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.count();
+    }
+}
@@ -0,0 +1,89 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+/**
+ * Concurrent price increments of {@code rows} plain products (1 being a single
+ * hot row), each one retried in a new transaction until it is not in conflict.
+ * The conditional UPDATE on the version read with the projection is compared
+ * to the baseline of loading the entity and letting Hibernate flush it with
+ * its version check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class ProductUpdateBenchmark {
+
+    @Param({ "1", "64" })
+    private int rows;
+
+    private BenchmarkApplication application;
+    private ProductRepository repository;
+    private List<Long> ids;
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication();
+        repository = application.bean(ProductRepository.class);
+        ids = application.populate(rows, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public int conditionalUpdate() {
+        Long id = randomId();
+        for (int attempts = 1;; attempts++) {
+            boolean updated = application.inRequest(() -> {
+                ProductView current = repository.findViewById(id).orElseThrow();
+                return repository.updateIfVersion(id, current.version(), current.name(), current.price() + 1) == 1;
+            });
+            if (updated) {
+                return attempts;
+            }
+        }
+    }
+
+    @Benchmark
+    public int entityUpdate() {
+        Long id = randomId();
+        for (int attempts = 1;; attempts++) {
+            try {
+                application.inRequest(() -> {
+                    Product product = repository.findById(id).orElseThrow();
+                    product.setPrice(product.getPrice() + 1);
+                    return product;
+                });
+                return attempts;
+            } catch (OptimisticLockingFailureException e) {
+                // retried with the committed version
+            }
+        }
+    }
+
+    private Long randomId() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+}
@@ -0,0 +1,89 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+
+/**
+ * Load test of the running server: each operation is a burst of
+ * {@code concurrency} simultaneous page reads, served either by the platform
+ * thread pool of Tomcat or by virtual threads, the database access being
+ * bounded the same way in both modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RequestConcurrencyBenchmark {
+
+    @Param({ "false", "true" })
+    private boolean virtualThreads;
+
+    @Param({ "200", "2000" })
+    private int concurrency;
+
+    private BenchmarkApplication application;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication(WebApplicationType.SERVLET,
+                "spring.threads.virtual.enabled=" + virtualThreads);
+        application.populate(10_000, 100);
+        clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+        request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + application.port() + "/api/products?limit=50&afterId=5000"))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        clientExecutor.shutdownNow();
+        application.close();
+    }
+
+    @Benchmark
+    public int burst() {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        int failures = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            if (response.join().statusCode() != 200) {
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " of " + concurrency + " requests failed");
+        }
+        return concurrency;
+    }
+}
@@ -0,0 +1,113 @@
+package com.gbroche.tpspring1.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.service.ProductExportWriter;
+
+/**
+ * The full listing serialized in JSON and in the binary formats, as is and
+ * gzipped the way the server compresses it, and the export streamed from the
+ * database in each format. The listing is read once at setup so that only
+ * the serialization is measured, the payload sizes of each format being
+ * printed there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WireFormatBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int rows;
+
+    @Param({ "json", "cbor", "smile" })
+    private String format;
+
+    private BenchmarkApplication application;
+    private ProductExportWriter exportWriter;
+    private ObjectMapper mapper;
+    private MediaType mediaType;
+    private List<ProductView> views;
+
+    @Setup
+    public void setUp() {
+        application = new BenchmarkApplication();
+        exportWriter = application.bean(ProductExportWriter.class);
+        application.populate(rows, 10);
+        ProductRepository repository = application.bean(ProductRepository.class);
+        views = application.inRequest(repository::findAllViews);
+        switch (format) {
+            case "cbor" -> {
+                mapper = new CBORMapper();
+                mediaType = MediaType.APPLICATION_CBOR;
+            }
+            case "smile" -> {
+                mapper = new SmileMapper();
+                mediaType = ProductExportWriter.APPLICATION_SMILE;
+            }
+            default -> {
+                mapper = application.bean(ObjectMapper.class);
+                mediaType = MediaType.APPLICATION_JSON;
+            }
+        }
+        System.out.printf("%nPayload bytes for %d rows in %s: listing=%d, gzipped=%d, export=%d%n", rows, format,
+                listing(), listingGzipped(), export());
+    }
+
+    @TearDown
+    public void tearDown() {
+        application.close();
+    }
+
+    @Benchmark
+    public long listing() {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            mapper.writeValue(out, views);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.count();
+    }
+
+    @Benchmark
+    public long listingGzipped() {
+        CountingOutputStream out = new CountingOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            mapper.writeValue(gzip, views);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.count();
+    }
+
+    @Benchmark
+    public long export() {
+        CountingOutputStream out = new CountingOutputStream();
+        try {
+            exportWriter.write(mediaType, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.count();
+    }
+}
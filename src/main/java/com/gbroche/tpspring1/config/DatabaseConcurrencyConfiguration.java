@@ -0,0 +1,41 @@
+package com.gbroche.tpspring1.config;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Wraps the application data source in a {@link ConcurrencyLimitedDataSource},
+ * sized by {@code products.datasource.max-concurrency} (the Hikari pool size
+ * by default). The read replica pool is left as is, its connections being
+ * counted by the limit wrapping the routing between both pools.
+ */
+@Configuration(proxyBeanMethods = false)
+public class DatabaseConcurrencyConfiguration {
+
+    @Bean
+    static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConcurrencyLimitedDataSource
+                        || ReadReplicaConfiguration.REPLICA_DATA_SOURCE.equals(beanName)) {
+                    return bean;
+                }
+                Binder binder = Binder.get(environment);
+                int poolSize = binder.bind("spring.datasource.hikari.maximum-pool-size", Integer.class).orElse(10);
+                int maxConcurrency = binder.bind("products.datasource.max-concurrency", Integer.class)
+                        .orElse(poolSize);
+                Duration acquireTimeout = binder.bind("products.datasource.acquire-timeout", Duration.class)
+                        .orElse(Duration.ofSeconds(5));
+                return new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeout);
+            }
+        };
+    }
+}
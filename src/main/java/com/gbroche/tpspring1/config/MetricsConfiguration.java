@@ -0,0 +1,53 @@
+package com.gbroche.tpspring1.config;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.gbroche.tpspring1.metrics.QueryCountInterceptor;
+import com.gbroche.tpspring1.metrics.QueryCounter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Application specific metrics on top of the ones from Actuator: statements
+ * per request and free slots of the {@link ConcurrencyLimitedDataSource}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    HibernatePropertiesCustomizer queryCounterCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryCounter());
+    }
+
+    @Bean
+    WebMvcConfigurer queryCountInterceptorConfigurer(MeterRegistry registry) {
+        QueryCountInterceptor interceptor = new QueryCountInterceptor(registry);
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry interceptors) {
+                interceptors.addInterceptor(interceptor).addPathPatterns("/api/**");
+            }
+        };
+    }
+
+    @Bean
+    MeterBinder databaseConcurrencyMetrics(DataSource dataSource) {
+        return registry -> {
+            if (dataSource instanceof ConcurrencyLimitedDataSource limited) {
+                Gauge.builder("products.datasource.available.permits", limited,
+                        ConcurrencyLimitedDataSource::availablePermits)
+                        .description("Connections that can still be borrowed before callers have to wait")
+                        .register(registry);
+            }
+        };
+    }
+}
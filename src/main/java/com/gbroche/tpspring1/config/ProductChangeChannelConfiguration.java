@@ -0,0 +1,22 @@
+package com.gbroche.tpspring1.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.gbroche.tpspring1.event.LocalProductChangeChannel;
+import com.gbroche.tpspring1.event.ProductChangeChannel;
+
+/**
+ * Keeps the changes within this JVM unless another {@link ProductChangeChannel}
+ * is declared, in this context or in a parent one.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ProductChangeChannelConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    ProductChangeChannel productChangeChannel() {
+        return new LocalProductChangeChannel();
+    }
+}
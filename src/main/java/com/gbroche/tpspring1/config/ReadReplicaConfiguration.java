@@ -0,0 +1,93 @@
+package com.gbroche.tpspring1.config;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Routes read-only transactions to the read replica configured by
+ * {@code products.datasource.replica.*}, with its own Hikari pool tuned by
+ * {@code products.datasource.replica.hikari.*}. The routing happens before the
+ * concurrency limit is applied, which then counts the connections of both
+ * pools together.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("products.datasource.replica.url")
+public class ReadReplicaConfiguration {
+    static final String REPLICA_DATA_SOURCE = "replicaDataSource";
+
+    /**
+     * The replica pool, closed with the context and instrumented as the
+     * {@code replica} pool of the Hikari metrics. Not a default candidate, so
+     * that the primary data source is still auto-configured and injected
+     * wherever a data source is.
+     */
+    @Bean(name = REPLICA_DATA_SOURCE, defaultCandidate = false)
+    HikariDataSource replicaDataSource(Environment environment) {
+        Binder binder = Binder.get(environment);
+        DataSourceProperties properties = binder.bind("products.datasource.replica", DataSourceProperties.class)
+                .get();
+        HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        replica.setPoolName("replica");
+        binder.bind("products.datasource.replica.hikari", Bindable.ofInstance(replica));
+        return replica;
+    }
+
+    /**
+     * Declared with its own type for the factory to see it is ordered, and so
+     * runs before the unordered concurrency limit.
+     */
+    @Bean
+    static RoutingPostProcessor readReplicaRoutingPostProcessor(BeanFactory beanFactory) {
+        return new RoutingPostProcessor(beanFactory);
+    }
+
+    /**
+     * With the open session in view, Hibernate would otherwise keep the
+     * connection of the first transaction of a request for the next ones,
+     * whether read-only or not.
+     */
+    @Bean
+    HibernatePropertiesCustomizer connectionReleasedAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    static final class RoutingPostProcessor implements BeanPostProcessor, Ordered {
+        private final BeanFactory beanFactory;
+
+        private RoutingPostProcessor(BeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource) || bean instanceof LazyConnectionDataSourceProxy
+                    || REPLICA_DATA_SOURCE.equals(beanName)) {
+                return bean;
+            }
+            DataSource replica = beanFactory.getBean(REPLICA_DATA_SOURCE, DataSource.class);
+            return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(dataSource, replica));
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -1,57 +1,249 @@
 package com.gbroche.tpspring1.controller;
 
+import com.gbroche.tpspring1.dto.BatchReport;
+import com.gbroche.tpspring1.dto.BulkImportReport;
+import com.gbroche.tpspring1.dto.CacheStatsView;
+import com.gbroche.tpspring1.dto.ProductClosureView;
+import com.gbroche.tpspring1.dto.ProductFilter;
+import com.gbroche.tpspring1.dto.PriceChangeRequest;
+import com.gbroche.tpspring1.dto.ProductPage;
+import com.gbroche.tpspring1.dto.ProductSelection;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.event.ProductChangeStream;
 import com.gbroche.tpspring1.model.Product;
 import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.service.BundleClosureIndex;
+import com.gbroche.tpspring1.service.CatalogVersion;
+import com.gbroche.tpspring1.service.ProductBatchService;
+import com.gbroche.tpspring1.service.ProductCache;
+import com.gbroche.tpspring1.service.ProductExportWriter;
+import com.gbroche.tpspring1.service.ProductImportService;
+import com.gbroche.tpspring1.service.ProductSearchIndex;
+import com.gbroche.tpspring1.service.ProductService;
+import com.gbroche.tpspring1.service.ProductStreamWriter;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("api/products")
 public class ProductController {
+    static final int MAX_PAGE_SIZE = 1000;
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of("id", "name", "price");
+
     private final ProductRepository repository;
+    private final ProductStreamWriter streamWriter;
+    private final ProductImportService importService;
+    private final ProductCache productCache;
+    private final ProductService productService;
+    private final BundleClosureIndex closureIndex;
+    private final ProductSearchIndex searchIndex;
+    private final ProductBatchService batchService;
+    private final ProductChangeStream changeStream;
+    private final CatalogVersion catalogVersion;
+    private final ProductExportWriter exportWriter;
+    private final CacheControl cacheControl;
 
-    public ProductController(ProductRepository repository) {
+    public ProductController(ProductRepository repository, ProductStreamWriter streamWriter,
+            ProductImportService importService, ProductCache productCache, ProductService productService,
+            BundleClosureIndex closureIndex, ProductSearchIndex searchIndex, ProductBatchService batchService,
+            ProductChangeStream changeStream, CatalogVersion catalogVersion, ProductExportWriter exportWriter,
+            @Value("${products.http.max-age:0s}") Duration maxAge) {
         this.repository = repository;
+        this.streamWriter = streamWriter;
+        this.importService = importService;
+        this.productCache = productCache;
+        this.productService = productService;
+        this.closureIndex = closureIndex;
+        this.searchIndex = searchIndex;
+        this.batchService = batchService;
+        this.changeStream = changeStream;
+        this.catalogVersion = catalogVersion;
+        this.exportWriter = exportWriter;
+        this.cacheControl = maxAge.isZero() ? CacheControl.noCache() : CacheControl.maxAge(maxAge).mustRevalidate();
     }
 
+    /**
+     * The whole catalog when neither filtered nor sorted. A filtered or sorted
+     * listing is refused when more than {@value #MAX_PAGE_SIZE} products
+     * match, rather than cut: the paged form reads them instead.
+     */
     @GetMapping
-    public List<Product> getAll() {
-        return repository.findAll();
+    public ResponseEntity<?> getAll(ProductFilter filter, Sort sort, @RequestHeader HttpHeaders headers) {
+        if (filter.isEmpty() && sort.isUnsorted()) {
+            return conditionally(headers, catalogETag(headers.getAccept()),
+                    () -> catalogVersion.read(repository::findAllViews));
+        }
+        Optional<String> unsortableProperty = sort.stream()
+                .map(Sort.Order::getProperty)
+                .filter(property -> !SORTABLE_PROPERTIES.contains(property))
+                .findFirst();
+        if (unsortableProperty.isPresent()) {
+            return ResponseEntity.badRequest().body("Products cannot be sorted by " + unsortableProperty.get());
+        }
+        String eTag = catalogETag(headers.getAccept());
+        if (eTagMatches(headers.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+        List<ProductView> views = catalogVersion.read(
+                () -> repository.findViews(filter, sort.and(Sort.by("id")), Limit.of(MAX_PAGE_SIZE + 1)));
+        if (views.size() > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("More than " + MAX_PAGE_SIZE
+                    + " products match, read them by pages with limit and afterId");
+        }
+        return conditionally(headers, eTag, () -> views);
+    }
+
+    @GetMapping(params = "limit")
+    public ResponseEntity<?> getPage(@RequestParam(defaultValue = "0") long afterId, @RequestParam int limit,
+            ProductFilter filter, Sort sort, @RequestHeader HttpHeaders headers) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (sort.isSorted()) {
+            return ResponseEntity.badRequest().body("Pages are always ordered by id, sort is not supported");
+        }
+        return conditionally(headers, catalogETag(headers.getAccept()), () -> {
+            List<ProductView> items = catalogVersion.read(() -> filter.isEmpty()
+                    ? repository.findViewsAfter(afterId, Limit.of(limit))
+                    : repository.findViewsAfter(afterId, Limit.of(limit), filter));
+            Long nextAfterId = items.size() < limit ? null : items.get(items.size() - 1).id();
+            return new ProductPage(items, nextAfterId);
+        });
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestHeader HttpHeaders headers) {
+        String eTag = catalogETag(MediaType.APPLICATION_NDJSON, "");
+        if (eTagMatches(headers.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(streamWriter::writeNdjson);
+    }
+
+    /**
+     * Changes committed from now on, as server-sent events.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges() throws IOException {
+        return changeStream.subscribe();
+    }
+
+    /**
+     * The whole catalog with the bundle links as a single document, in JSON,
+     * CBOR or Smile depending on the {@code Accept} header.
+     */
+    @GetMapping(value = "/export", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+            ProductExportWriter.APPLICATION_SMILE_VALUE })
+    public ResponseEntity<StreamingResponseBody> export(@RequestHeader HttpHeaders headers) {
+        MediaType format = negotiatedFormat(headers.getAccept());
+        String eTag = catalogETag(format, "-export");
+        if (eTagMatches(headers.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+        return ResponseEntity.ok()
+                .contentType(format)
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(out -> exportWriter.write(format, out));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam String q, @RequestParam(defaultValue = "20") int limit,
+            @RequestHeader HttpHeaders headers) {
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().body("Search query must not be blank");
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("Search limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return conditionally(headers, catalogETag(headers.getAccept()),
+                () -> catalogVersion.read(() -> repository.findViewsByIds(searchIndex.search(q, limit))));
     }
 
+    /**
+     * Tagged with the version of the product, so revalidating it costs a
+     * lookup in the product cache.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getById(@PathVariable Long id) {
+    public ResponseEntity<?> getById(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
         try {
-            Product foundProduct = repository.findById(id).orElseThrow();
-            return ResponseEntity.ok(foundProduct);
+            ProductView foundProduct = productCache.get(id).orElseThrow();
+            String eTag = "\"" + id + "-" + foundProduct.version() + "-"
+                    + negotiatedFormat(headers.getAccept()).getSubtype() + "\"";
+            return conditionally(headers, eTag, () -> foundProduct);
         } catch (Exception e) {
             return ResponseEntity.status(404).body("No corresponding product found");
         }
     }
 
+    @GetMapping("/cache/stats")
+    public CacheStatsView getCacheStats() {
+        return productCache.stats();
+    }
+
+    @GetMapping("/{id}/closure")
+    public ResponseEntity<?> getClosure(@PathVariable Long id) {
+        try {
+            BundleClosureIndex.Closure closure = closureIndex.find(id)
+                    .orElseGet(() -> closureIndex.closureOf(repository.findWithSourcesById(id).orElseThrow()));
+            return ResponseEntity.ok(new ProductClosureView(id, Arrays.stream(closure.leafIds()).boxed().toList(),
+                    closure.price()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(404).body("No corresponding product found");
+        }
+    }
+
     @PostMapping
-    public Product create(@RequestBody Product product) {
-        return repository.save(product);
+    public ProductView create(@RequestBody Product product) {
+        return ProductView.of(productService.create(product));
+    }
+
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public ResponseEntity<BulkImportReport> bulkCreate(InputStream body) throws IOException {
+        BulkImportReport report = importService.importProducts(body);
+        if (report.error() != null) {
+            return ResponseEntity.badRequest().body(report);
+        }
+        return ResponseEntity.ok(report);
     }
 
     @PostMapping(value = "/{id}/duplicate")
     public ResponseEntity<?> duplicate(@PathVariable Long id) {
         try {
-            Product ProductToCopy = repository.findById(id).orElseThrow();
-            Product duplicate = new Product();
-            duplicate.setName(ProductToCopy.getName() + " (Copy)");
-            duplicate.setPrice(ProductToCopy.getPrice());
-            Product createDuplicate = repository.save(duplicate);
-            return ResponseEntity.ok(createDuplicate);
+            Product createDuplicate = productService.duplicate(id).orElseThrow();
+            return ResponseEntity.ok(ProductView.of(createDuplicate));
         } catch (Exception e) {
             return ResponseEntity.status(404).body("No product found with given ID to dupplicate");
         }
@@ -63,74 +255,185 @@ public class ProductController {
         if (productIds.size() <= 1) {
             return ResponseEntity.badRequest().body("At least 2 products are required to create a bundle");
         }
-        List<Product> baseProducts = new ArrayList<>();
         Set<Long> uniqueIds = new HashSet<>(productIds);
         if (uniqueIds.size() != productIds.size()) {
             return ResponseEntity.badRequest().body("Duplicate product IDs are not allowed");
         }
-        try {
-            for (Long productId : productIds) {
-                Product newProductOfBundle = repository.findById(productId).orElseThrow();
-                baseProducts.add(newProductOfBundle);
-            }
-        } catch (NoSuchElementException e) {
-            return ResponseEntity.badRequest().body("One of the product id given does not correspond to any product");
+        Map<Long, Product> foundProducts = repository.findAllWithSourcesByIdIn(uniqueIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<Long> missingIds = productIds.stream()
+                .filter(productId -> !foundProducts.containsKey(productId))
+                .toList();
+        if (!missingIds.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body("Some of the product ids given do not correspond to any product: " + missingIds);
         }
+        List<Product> baseProducts = productIds.stream()
+                .map(foundProducts::get)
+                .collect(Collectors.toCollection(ArrayList::new));
 
         if (doesBundleRequestCauseRecursion(baseProducts)) {
             return ResponseEntity.badRequest().body(
                     "The products given for the new bundle have at least one of them also being a bundle and causing dupplicate products");
         }
 
-        Product newBundle = new Product();
-
-        String newBundleName = baseProducts.stream()
-                .map(Product::getName)
-                .collect(Collectors.joining("+"));
-        Double newBundlePrice = baseProducts.stream()
-                .mapToDouble(Product::getPrice)
-                .sum();
-
-        newBundle.setName(newBundleName);
-        newBundle.setPrice(newBundlePrice);
-        newBundle.setSources(baseProducts);
-
-        Product savedBundle = repository.save(newBundle);
-        return ResponseEntity.ok(savedBundle);
+        Product savedBundle = productService.createBundle(baseProducts);
+        return ResponseEntity.ok(ProductView.of(savedBundle));
     }
 
+    /**
+     * Updating with the {@code version} of the product as it was read is
+     * rejected with a 409 if it changed since, the body then being the current
+     * product to reapply the change on and retry with its version. Without a
+     * version the last update wins.
+     */
     @PutMapping("/{id}")
-    public Product update(@PathVariable Long id, @RequestBody Product product) {
-        Product existing = repository.findById(id).orElseThrow();
-        existing.setName(product.getName());
-        existing.setPrice(product.getPrice());
-        return repository.save(existing);
+    public ResponseEntity<?> update(@PathVariable Long id, @RequestBody Product product) {
+        try {
+            return ResponseEntity.ok(productService.update(id, product));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No product to update found at this id");
+        } catch (OptimisticLockingFailureException e) {
+            Optional<ProductView> current = repository.findViewById(id);
+            return current.isPresent()
+                    ? ResponseEntity.status(HttpStatus.CONFLICT).body(current.get())
+                    : ResponseEntity.status(HttpStatus.NOT_FOUND).body("No product to update found at this id");
+        }
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<?> delete(@PathVariable Long id) {
         try {
-            if (!repository.existsById(id)) {
+            if (!productService.delete(id)) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(("No product to delete found at this id"));
             }
-            repository.deleteById(id);
             return ResponseEntity.noContent().build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
-    private boolean doesBundleRequestCauseRecursion(List<Product> products) {
-        List<Long> bundleProductsId = new ArrayList<>();
-        for (Product product : products) {
-            bundleProductsId.add(product.getId());
-            if (!product.getSources().isEmpty()) {
-                for (Product source : product.getSources()) {
-                    bundleProductsId.add(source.getId());
+    @PostMapping("/batch/price")
+    public ResponseEntity<?> changePrices(@RequestBody PriceChangeRequest request) {
+        String selectionError = validateSelection(request.selection());
+        if (selectionError != null) {
+            return ResponseEntity.badRequest().body(selectionError);
+        }
+        if (request.factor() == null && request.delta() == null) {
+            return ResponseEntity.badRequest().body("A price factor or delta is required");
+        }
+        return toResponse(batchService.changePrices(request.selection(),
+                request.factor() == null ? 1 : request.factor(), request.delta() == null ? 0 : request.delta()));
+    }
+
+    @PostMapping("/batch/delete")
+    public ResponseEntity<?> deleteAll(@RequestBody ProductSelection selection) {
+        String selectionError = validateSelection(selection);
+        if (selectionError != null) {
+            return ResponseEntity.badRequest().body(selectionError);
+        }
+        return toResponse(batchService.delete(selection));
+    }
+
+    @PostMapping("/batch/duplicate")
+    public ResponseEntity<?> duplicateAll(@RequestBody ProductSelection selection) {
+        String selectionError = validateSelection(selection);
+        if (selectionError != null) {
+            return ResponseEntity.badRequest().body(selectionError);
+        }
+        return toResponse(batchService.duplicate(selection));
+    }
+
+    /**
+     * A batch targets either listed ids or a filter, and an empty filter is
+     * refused rather than taken as the whole catalog.
+     */
+    private static String validateSelection(ProductSelection selection) {
+        if ((selection.ids() == null) == (selection.filter() == null)) {
+            return "Either ids or a filter must be given";
+        }
+        if (selection.filter() != null && selection.filter().isEmpty()) {
+            return "The filter must have at least one criterion";
+        }
+        return null;
+    }
+
+    /**
+     * Answers with a 304 when the client already has the representation tagged
+     * {@code eTag}, the body being then neither read nor serialized.
+     */
+    private ResponseEntity<?> conditionally(HttpHeaders headers, String eTag, Supplier<?> body) {
+        if (eTagMatches(headers.getIfNoneMatch(), eTag)) {
+            return notModified(eTag);
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(body.get());
+    }
+
+    private <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    private String catalogETag(List<MediaType> accept) {
+        return catalogETag(negotiatedFormat(accept), "");
+    }
+
+    /**
+     * Weak, Tomcat only compressing responses without a strong tag and
+     * revalidations comparing tags weakly anyway. The formats of a resource
+     * share its URL, so they are part of the tag.
+     */
+    private String catalogETag(MediaType format, String variant) {
+        return "W/\"" + catalogVersion.current() + variant + "-" + format.getSubtype() + "\"";
+    }
+
+    /**
+     * First of the formats the client lists that has a converter, JSON
+     * otherwise.
+     */
+    static MediaType negotiatedFormat(List<MediaType> accept) {
+        for (MediaType type : accept) {
+            for (MediaType format : ProductExportWriter.FORMATS) {
+                if (type.equalsTypeAndSubtype(format)) {
+                    return format;
                 }
             }
         }
-        Set<Long> uniqueIds = new HashSet<>(bundleProductsId);
-        return uniqueIds.size() != bundleProductsId.size();
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Weak comparison, as required for {@code If-None-Match}.
+     */
+    static boolean eTagMatches(List<String> ifNoneMatch, String eTag) {
+        String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String tag : ifNoneMatch) {
+            if (tag.equals("*") || tag.equals(opaqueTag) || tag.equals("W/" + opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<BatchReport> toResponse(BatchReport report) {
+        if (report.error() != null) {
+            return ResponseEntity.badRequest().body(report);
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Two requested products overlap when their flattened leaf components
+     * intersect, whatever the depth at which they are nested.
+     */
+    private boolean doesBundleRequestCauseRecursion(List<Product> products) {
+        return closureIndex.anyOverlap(products);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,26 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch operation, item by item. Products are processed in
+ * chunks each committed on its own: when {@code error} is set the chunk that
+ * failed was rolled back and nothing after it was processed, the listed items
+ * being those of the committed chunks.
+ */
+public record BatchReport(int chunks, List<Item> items, String error) {
+
+    public enum Status {
+        UPDATED, DELETED, DUPLICATED, NOT_FOUND, SKIPPED_BUNDLE
+    }
+
+    /**
+     * @param duplicateId id of the copy, only set for a duplicated product
+     */
+    public record Item(Long id, Status status, Long duplicateId) {
+
+        public static Item of(Long id, Status status) {
+            return new Item(id, status, null);
+        }
+    }
+}
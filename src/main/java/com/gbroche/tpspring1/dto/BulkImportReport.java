@@ -0,0 +1,14 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Every listed batch has been committed, when
+ * {@code error} is set the import stopped at the first invalid product and
+ * nothing after it was imported.
+ */
+public record BulkImportReport(long imported, List<Batch> batches, String error) {
+
+    public record Batch(int index, int size, Long firstId, Long lastId) {
+    }
+}
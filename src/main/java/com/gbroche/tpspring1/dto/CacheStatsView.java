@@ -0,0 +1,5 @@
+package com.gbroche.tpspring1.dto;
+
+public record CacheStatsView(long size, long hitCount, long missCount, double hitRate, long loadCount,
+        long evictionCount) {
+}
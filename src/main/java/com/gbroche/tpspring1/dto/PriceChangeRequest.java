@@ -0,0 +1,14 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * Repricing of a selection of products: each new price is
+ * {@code price * factor + delta}, factor defaulting to 1 and delta to 0.
+ */
+public record PriceChangeRequest(List<Long> ids, ProductFilter filter, Double factor, Double delta) {
+
+    public ProductSelection selection() {
+        return new ProductSelection(ids, filter);
+    }
+}
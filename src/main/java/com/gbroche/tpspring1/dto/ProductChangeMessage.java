@@ -0,0 +1,20 @@
+package com.gbroche.tpspring1.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.model.ProductChangeRecord;
+
+/**
+ * A committed product change as delivered to the outbox sinks. Delivery is at
+ * least once: a consumer seeing an {@code id} again can ignore it.
+ */
+public record ProductChangeMessage(long id, ProductChangeEvent.Type type, List<Long> productIds,
+        Instant createdAt) {
+
+    public static ProductChangeMessage of(ProductChangeRecord record) {
+        return new ProductChangeMessage(record.getId(), record.getType(), record.getProductIds(),
+                record.getCreatedAt());
+    }
+}
@@ -0,0 +1,20 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+
+/**
+ * A product change committed on the node {@code originNodeId}, as sent to the
+ * other nodes.
+ */
+public record ProductChangeNotice(String originNodeId, ProductChangeEvent.Type type, List<Long> productIds) {
+
+    public static ProductChangeNotice of(String originNodeId, ProductChangeEvent event) {
+        return new ProductChangeNotice(originNodeId, event.type(), event.productIds());
+    }
+
+    public ProductChangeEvent toEvent() {
+        return new ProductChangeEvent(type, productIds);
+    }
+}
@@ -0,0 +1,10 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * Flattened view of a product: the ids of the leaf products it is made of
+ * (itself for a plain product) and its price.
+ */
+public record ProductClosureView(Long id, List<Long> leafIds, double price) {
+}
@@ -0,0 +1,7 @@
+package com.gbroche.tpspring1.dto;
+
+/**
+ * Link from a bundle to one of its direct sources.
+ */
+public record ProductEdge(long productId, long sourceId) {
+}
@@ -0,0 +1,13 @@
+package com.gbroche.tpspring1.dto;
+
+/**
+ * Optional criteria of a product listing, bound from the query string.
+ *
+ * @param bundles true for bundles only, false for plain products only
+ */
+public record ProductFilter(String namePrefix, Double minPrice, Double maxPrice, Boolean bundles) {
+
+    public boolean isEmpty() {
+        return namePrefix == null && minPrice == null && maxPrice == null && bundles == null;
+    }
+}
@@ -0,0 +1,10 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated listing. {@code nextAfterId} is the cursor to
+ * send back as {@code afterId} to get the next page, null on the last page.
+ */
+public record ProductPage(List<ProductView> items, Long nextAfterId) {
+}
@@ -0,0 +1,7 @@
+package com.gbroche.tpspring1.dto;
+
+/**
+ * Price of a product as read by a batch operation before changing it.
+ */
+public record ProductPrice(Long id, double price) {
+}
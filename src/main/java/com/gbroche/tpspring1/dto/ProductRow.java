@@ -0,0 +1,7 @@
+package com.gbroche.tpspring1.dto;
+
+/**
+ * A product on its own, without its sources.
+ */
+public record ProductRow(long id, String name, double price, long version) {
+}
@@ -0,0 +1,10 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.List;
+
+/**
+ * Products targeted by a batch operation, either listed by id or matching a
+ * filter, never both.
+ */
+public record ProductSelection(List<Long> ids, ProductFilter filter) {
+}
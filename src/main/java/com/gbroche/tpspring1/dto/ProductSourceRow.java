@@ -0,0 +1,8 @@
+package com.gbroche.tpspring1.dto;
+
+/**
+ * Flat projection of a product joined with its sources: one row per source,
+ * or a single row with a null {@code sourceId} for a plain product.
+ */
+public record ProductSourceRow(Long id, String name, double price, long version, Long sourceId) {
+}
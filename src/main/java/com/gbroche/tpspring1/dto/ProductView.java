@@ -0,0 +1,57 @@
+package com.gbroche.tpspring1.dto;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.gbroche.tpspring1.model.Product;
+
+/**
+ * Read-only representation of a product returned by the API, a bundle only
+ * refers to its sources by id. The version is the one to send back with an
+ * update.
+ */
+@JsonSerialize(using = ProductViewSerializer.class)
+public record ProductView(Long id, String name, double price, long version, List<Long> sourceIds) {
+
+    public static ProductView of(Product product) {
+        return new ProductView(product.getId(), product.getName(), product.getPrice(),
+                product.getVersion(), product.getSources().stream().map(Product::getId).toList());
+    }
+
+    /**
+     * Groups rows ordered by product id into one view per product.
+     */
+    public static void groupRows(Iterator<ProductSourceRow> rows, Consumer<ProductView> action) {
+        ProductSourceRow first = null;
+        List<Long> sourceIds = new ArrayList<>();
+        while (rows.hasNext()) {
+            ProductSourceRow row = rows.next();
+            if (first != null && !first.id().equals(row.id())) {
+                action.accept(toView(first, sourceIds));
+                sourceIds = new ArrayList<>();
+            }
+            if (first == null || !first.id().equals(row.id())) {
+                first = row;
+            }
+            if (row.sourceId() != null) {
+                sourceIds.add(row.sourceId());
+            }
+        }
+        if (first != null) {
+            action.accept(toView(first, sourceIds));
+        }
+    }
+
+    public static List<ProductView> groupRows(List<ProductSourceRow> rows) {
+        List<ProductView> views = new ArrayList<>();
+        groupRows(rows.iterator(), views::add);
+        return views;
+    }
+
+    private static ProductView toView(ProductSourceRow row, List<Long> sourceIds) {
+        return new ProductView(row.id(), row.name(), row.price(), row.version(), List.copyOf(sourceIds));
+    }
+}
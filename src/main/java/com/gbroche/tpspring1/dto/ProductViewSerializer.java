@@ -0,0 +1,50 @@
+package com.gbroche.tpspring1.dto;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes a {@link ProductView} field by field with pre-encoded names, skipping
+ * the bean introspection and reflective accessors of the default serializer.
+ * It is on the path of every product listing.
+ */
+public class ProductViewSerializer extends StdSerializer<ProductView> {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString SOURCE_IDS = new SerializedString("sourceIds");
+
+    public ProductViewSerializer() {
+        super(ProductView.class);
+    }
+
+    @Override
+    public void serialize(ProductView view, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(view);
+        generator.writeFieldName(ID);
+        if (view.id() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(view.id());
+        }
+        generator.writeFieldName(NAME);
+        generator.writeString(view.name());
+        generator.writeFieldName(PRICE);
+        generator.writeNumber(view.price());
+        generator.writeFieldName(VERSION);
+        generator.writeNumber(view.version());
+        generator.writeFieldName(SOURCE_IDS);
+        generator.writeStartArray(view.sourceIds(), view.sourceIds().size());
+        for (Long sourceId : view.sourceIds()) {
+            generator.writeNumber(sourceId);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
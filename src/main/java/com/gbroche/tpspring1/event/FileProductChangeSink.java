@@ -0,0 +1,51 @@
+package com.gbroche.tpspring1.event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Appends the product changes to {@code products.outbox.file}, one JSON
+ * object per line. A batch is synced to disk before being acknowledged.
+ */
+@Component
+@ConditionalOnProperty("products.outbox.file")
+public class FileProductChangeSink implements ProductChangeSink {
+    private final ObjectMapper objectMapper;
+    private final Path file;
+
+    public FileProductChangeSink(ObjectMapper objectMapper, @Value("${products.outbox.file}") Path file)
+            throws IOException {
+        this.objectMapper = objectMapper;
+        this.file = file.toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+    }
+
+    @Override
+    public void publish(List<ProductChangeMessage> changes) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (ProductChangeMessage change : changes) {
+            lines.append(objectMapper.writeValueAsString(change)).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.gbroche.tpspring1.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+import com.gbroche.tpspring1.dto.ProductChangeNotice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Channel within a single JVM: enough for a single node, and for tests
+ * running several nodes as application contexts sharing it through a parent
+ * context. Notices are delivered on a thread of their own, in the order they
+ * were published, like a broker would.
+ */
+public class LocalProductChangeChannel implements ProductChangeChannel, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalProductChangeChannel.class);
+
+    private final List<Consumer<ProductChangeNotice>> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Consumer<List<ProductChangeMessage>>> dispatchedSubscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("product-change-channel").daemon().factory());
+
+    @Override
+    public void publish(ProductChangeNotice notice) {
+        broadcast(subscribers, notice);
+    }
+
+    @Override
+    public Runnable subscribe(Consumer<ProductChangeNotice> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void publishDispatched(List<ProductChangeMessage> changes) {
+        broadcast(dispatchedSubscribers, changes);
+    }
+
+    @Override
+    public Runnable subscribeDispatched(Consumer<List<ProductChangeMessage>> subscriber) {
+        dispatchedSubscribers.add(subscriber);
+        return () -> dispatchedSubscribers.remove(subscriber);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> void broadcast(List<Consumer<T>> subscribers, T message) {
+        try {
+            executor.execute(() -> subscribers.forEach(subscriber -> deliver(subscriber, message)));
+        } catch (RejectedExecutionException e) {
+            // shutting down, nobody is left to notify
+        }
+    }
+
+    private static <T> void deliver(Consumer<T> subscriber, T message) {
+        try {
+            subscriber.accept(message);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Product change {} could not be applied by {}", message, subscriber, e);
+        }
+    }
+}
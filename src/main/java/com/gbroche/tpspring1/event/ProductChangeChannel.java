@@ -0,0 +1,39 @@
+package com.gbroche.tpspring1.event;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+import com.gbroche.tpspring1.dto.ProductChangeNotice;
+
+/**
+ * Broadcasts the product changes committed on a node to every node sharing
+ * the database, the sender included, and likewise the changes dispatched from
+ * the outbox, which a single node delivers at a time. Implementations plug a
+ * message broker in by declaring a bean of this type,
+ * {@link LocalProductChangeChannel} being used otherwise.
+ *
+ * <p>
+ * A notice lost on the way leaves a node stale until its caches expire, so
+ * implementations should favor delivering twice over not delivering.
+ */
+public interface ProductChangeChannel {
+
+    void publish(ProductChangeNotice notice);
+
+    /**
+     * @return the action cancelling the subscription
+     */
+    Runnable subscribe(Consumer<ProductChangeNotice> subscriber);
+
+    /**
+     * Sends changes dispatched from the outbox to the
+     * {@link ProductChangeStream} of every node.
+     */
+    void publishDispatched(List<ProductChangeMessage> changes);
+
+    /**
+     * @return the action cancelling the subscription
+     */
+    Runnable subscribeDispatched(Consumer<List<ProductChangeMessage>> subscriber);
+}
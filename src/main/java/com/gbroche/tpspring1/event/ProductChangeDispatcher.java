@@ -0,0 +1,130 @@
+package com.gbroche.tpspring1.event;
+
+import java.time.Duration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+import com.gbroche.tpspring1.model.ProductChangeRecord;
+import com.gbroche.tpspring1.repository.ProductChangeRecordRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Delivers the outbox to the {@link ProductChangeSink}s on a thread of its
+ * own, so that a mutation never waits for the consumers. Records are read by
+ * batches in id order and deleted once every sink accepted them: a failure or
+ * a crash in between delivers them again, never loses them. Changes of a same
+ * product are delivered in the order they were committed, whichever node
+ * committed them, their ids following that order (see
+ * {@link ProductChangeRecord}). The outbox is read on the primary: a lagging
+ * replica would hand out records already delivered.
+ *
+ * <p>
+ * The nodes sharing the database all run a dispatcher, but only one of them
+ * delivers at a time: a batch is claimed by locking its records, delivered and
+ * deleted in that same transaction, and a node whose claim does not start at
+ * the oldest record leaves the outbox to the node holding it. Changes reach
+ * the live feed of every node through {@link ProductChangeStream}.
+ *
+ * <p>
+ * The dispatcher is woken up by each commit and also polls the outbox every
+ * {@code products.outbox.poll-interval}, which retries failed deliveries and
+ * picks up what was left by the previous run.
+ */
+@Component
+public class ProductChangeDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductChangeDispatcher.class);
+
+    private final ProductChangeRecordRepository repository;
+    private final List<ProductChangeSink> sinks;
+    private final TransactionTemplate primaryTransaction;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("product-change-dispatcher").daemon().factory());
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    public ProductChangeDispatcher(ProductChangeRecordRepository repository, List<ProductChangeSink> sinks,
+            PlatformTransactionManager transactionManager,
+            @Value("${products.outbox.batch-size:500}") int batchSize,
+            @Value("${products.outbox.poll-interval:1s}") Duration pollInterval) {
+        this.repository = repository;
+        this.sinks = sinks;
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::dispatchPending, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Schedules a dispatch unless one is already waiting to run.
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::dispatchPending);
+            } catch (RejectedExecutionException e) {
+                // shutting down, the records are dispatched on the next start
+            }
+        }
+    }
+
+    private void dispatchPending() {
+        wakeUpPending.set(false);
+        try {
+            int dispatched;
+            do {
+                dispatched = primaryTransaction.execute(status -> dispatchOldest());
+            } while (dispatched == batchSize);
+        } catch (Exception e) {
+            LOGGER.warn("Product changes could not be dispatched, retrying in {}", pollInterval, e);
+        }
+    }
+
+    /**
+     * @return number of records dispatched, 0 if another node is dispatching
+     */
+    private int dispatchOldest() {
+        List<ProductChangeRecord> records = repository.findAllByOrderByIdAsc(Limit.of(batchSize));
+        if (records.isEmpty() || !Objects.equals(records.getFirst().getId(), repository.findFirstId())) {
+            return 0;
+        }
+        List<ProductChangeMessage> changes = records.stream().map(ProductChangeMessage::of).toList();
+        try {
+            for (ProductChangeSink sink : sinks) {
+                sink.publish(changes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        repository.deleteAllByIdInBatch(changes.stream().map(ProductChangeMessage::id).toList());
+        return records.size();
+    }
+}
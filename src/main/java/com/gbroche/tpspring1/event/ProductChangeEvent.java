@@ -0,0 +1,27 @@
+package com.gbroche.tpspring1.event;
+
+import java.util.List;
+
+/**
+ * Published by the services within the transaction of a product mutation.
+ * Listeners needing the committed state run after the commit, the
+ * {@link ProductChangeOutbox} records it in the same transaction.
+ */
+public record ProductChangeEvent(Type type, List<Long> productIds) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    public static ProductChangeEvent created(Long id) {
+        return new ProductChangeEvent(Type.CREATED, List.of(id));
+    }
+
+    public static ProductChangeEvent updated(Long id) {
+        return new ProductChangeEvent(Type.UPDATED, List.of(id));
+    }
+
+    public static ProductChangeEvent deleted(Long id) {
+        return new ProductChangeEvent(Type.DELETED, List.of(id));
+    }
+}
@@ -0,0 +1,40 @@
+package com.gbroche.tpspring1.event;
+
+import com.gbroche.tpspring1.model.ProductChangeRecord;
+import com.gbroche.tpspring1.repository.ProductChangeRecordRepository;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writes every {@link ProductChangeEvent} to the outbox table within the
+ * transaction of the mutation, so that a change is recorded if and only if it
+ * is committed. Delivering it to the consumers is left to the
+ * {@link ProductChangeDispatcher}, woken up once committed.
+ */
+@Component
+public class ProductChangeOutbox {
+    private final ProductChangeRecordRepository repository;
+    private final ProductChangeDispatcher dispatcher;
+
+    public ProductChangeOutbox(ProductChangeRecordRepository repository, ProductChangeDispatcher dispatcher) {
+        this.repository = repository;
+        this.dispatcher = dispatcher;
+    }
+
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(ProductChangeEvent event) {
+        repository.save(new ProductChangeRecord(event));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatcher.wakeUp();
+            }
+        });
+    }
+}
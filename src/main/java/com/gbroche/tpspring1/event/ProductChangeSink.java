@@ -0,0 +1,19 @@
+package com.gbroche.tpspring1.event;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+
+/**
+ * Destination of the product changes dispatched from the outbox. Every sink
+ * bean receives every change.
+ */
+public interface ProductChangeSink {
+
+    /**
+     * Delivers changes in the order they were recorded. Throwing leaves the
+     * whole batch in the outbox, to be delivered again to every sink.
+     */
+    void publish(List<ProductChangeMessage> changes) throws IOException;
+}
@@ -0,0 +1,78 @@
+package com.gbroche.tpspring1.event;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.gbroche.tpspring1.dto.ProductChangeMessage;
+
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Live feed of the product changes as server-sent events, each named after
+ * the type of change and identified by its outbox id. A subscriber only
+ * receives the changes dispatched while it is connected, and one that cannot
+ * be written to is dropped rather than holding the other sinks back.
+ *
+ * <p>
+ * Only one node dispatches the outbox at a time, so the changes it delivers
+ * to this sink are forwarded on the {@link ProductChangeChannel} to the
+ * streams of every node, this one included.
+ */
+@Component
+public class ProductChangeStream implements ProductChangeSink {
+    private final Set<SseEmitter> emitters = ConcurrentHashMap.newKeySet();
+    private final ProductChangeChannel channel;
+    private final Runnable unsubscribe;
+
+    public ProductChangeStream(ProductChangeChannel channel) {
+        this.channel = channel;
+        this.unsubscribe = channel.subscribeDispatched(this::send);
+    }
+
+    /**
+     * Opens the stream with a comment, sent right away so that the subscriber
+     * knows from which point on it receives the changes.
+     */
+    public SseEmitter subscribe() throws IOException {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        emitter.send(SseEmitter.event().comment("subscribed"));
+        return emitter;
+    }
+
+    @Override
+    public void publish(List<ProductChangeMessage> changes) {
+        channel.publishDispatched(changes);
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void completeAll() {
+        unsubscribe.run();
+        emitters.forEach(SseEmitter::complete);
+        emitters.clear();
+    }
+
+    private void send(List<ProductChangeMessage> changes) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                for (ProductChangeMessage change : changes) {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(change.id()))
+                            .name(change.type().name())
+                            .data(change, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+}
@@ -3,18 +3,34 @@ package com.gbroche.tpspring1.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.BatchSize;
+
 import jakarta.persistence.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_product_name", columnList = "name"),
+        @Index(name = "idx_product_price", columnList = "price") })
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long id;
     private String name;
     private double price;
 
+    /**
+     * Incremented by every update, including the price shifts carried over
+     * from a bundle's components.
+     */
+    @Version
+    private Long version;
+
     @ManyToMany
-    @JoinTable(name = "product_sources", joinColumns = @JoinColumn(name = "product_id"), inverseJoinColumns = @JoinColumn(name = "source_id"))
+    @BatchSize(size = 50)
+    @JoinTable(name = "product_sources", joinColumns = @JoinColumn(name = "product_id"), inverseJoinColumns = @JoinColumn(name = "source_id"), indexes = {
+            @Index(name = "idx_product_sources_product", columnList = "product_id"),
+            @Index(name = "idx_product_sources_source", columnList = "source_id") })
     private List<Product> sources = new ArrayList<>();
 
     public Product() {
@@ -51,6 +67,14 @@ public class Product {
         this.price = price;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public List<Product> getSources() {
         return sources;
     }
@@ -0,0 +1,69 @@
+package com.gbroche.tpspring1.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+
+import jakarta.persistence.*;
+
+/**
+ * A product change waiting in the outbox to be dispatched, written in the
+ * transaction of the mutation it records.
+ */
+@Entity
+@Table(name = "product_change_outbox")
+public class ProductChangeRecord {
+    /**
+     * Drawn from the sequence one insert at a time, while the mutation holds
+     * the lock of the product row: of two changes of a same product, the one
+     * committed last gets the greater id, whichever node made it. Blocks
+     * handed out per node would not keep that order.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_change_seq")
+    @SequenceGenerator(name = "product_change_seq", sequenceName = "product_change_seq", allocationSize = 1)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ProductChangeEvent.Type type;
+
+    /**
+     * Comma separated, a bulk import or a batch recording a whole chunk in a
+     * single row.
+     */
+    @Lob
+    @Column(name = "product_ids", nullable = false)
+    private String productIds;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    protected ProductChangeRecord() {
+    }
+
+    public ProductChangeRecord(ProductChangeEvent event) {
+        this.type = event.type();
+        this.productIds = event.productIds().stream().map(String::valueOf).collect(Collectors.joining(","));
+        this.createdAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public ProductChangeEvent.Type getType() {
+        return type;
+    }
+
+    public List<Long> getProductIds() {
+        return Arrays.stream(productIds.split(",")).map(Long::valueOf).toList();
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
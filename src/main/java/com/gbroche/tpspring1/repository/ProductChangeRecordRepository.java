@@ -0,0 +1,33 @@
+package com.gbroche.tpspring1.repository;
+
+import java.util.List;
+
+import com.gbroche.tpspring1.model.ProductChangeRecord;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+public interface ProductChangeRecordRepository extends JpaRepository<ProductChangeRecord, Long> {
+
+    /**
+     * Oldest records, locked until the end of the transaction. The ones locked
+     * by another transaction are skipped where the database supports it
+     * ({@code -2} being {@code LockOptions.SKIP_LOCKED}), waited for otherwise.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
+    List<ProductChangeRecord> findAllByOrderByIdAsc(Limit limit);
+
+    /**
+     * Id of the oldest record, locked or not.
+     */
+    @Query("select min(r.id) from ProductChangeRecord r")
+    Long findFirstId();
+}
@@ -0,0 +1,28 @@
+package com.gbroche.tpspring1.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.model.Product;
+
+/**
+ * Repository fragment for the Criteria queries built from a
+ * {@link Specification}: the ids only of the matching products, or their views
+ * projected in the same query.
+ */
+public interface ProductIdQueries {
+
+    List<Long> findIds(Specification<Product> specification, Sort sort, Limit limit);
+
+    /**
+     * Views of the first matching products in the given order, ties broken by
+     * id. The rows joined with the sources are streamed and read only up to
+     * the last product needed, so no id list is ever sent back to the
+     * database. Must be called inside a transaction.
+     */
+    List<ProductView> findViews(Specification<Product> specification, Sort sort, Limit limit);
+}
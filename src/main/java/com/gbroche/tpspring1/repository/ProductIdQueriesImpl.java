@@ -0,0 +1,90 @@
+package com.gbroche.tpspring1.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import com.gbroche.tpspring1.dto.ProductSourceRow;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.model.Product;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Root;
+
+class ProductIdQueriesImpl implements ProductIdQueries {
+    private static final int FETCH_SIZE = 500;
+
+    private final EntityManager entityManager;
+
+    ProductIdQueriesImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<Long> findIds(Specification<Product> specification, Sort sort, Limit limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<Product> root = query.from(Product.class);
+        query.select(root.get("id"));
+        query.where(specification.toPredicate(root, query, builder));
+        query.orderBy(QueryUtils.toOrders(sort, root, builder));
+        TypedQuery<Long> typedQuery = entityManager.createQuery(query);
+        if (limit.isLimited()) {
+            typedQuery.setMaxResults(limit.max());
+        }
+        return typedQuery.getResultList();
+    }
+
+    @Override
+    public List<ProductView> findViews(Specification<Product> specification, Sort sort, Limit limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductSourceRow> query = builder.createQuery(ProductSourceRow.class);
+        Root<Product> root = query.from(Product.class);
+        Join<Product, Product> source = root.join("sources", JoinType.LEFT);
+        query.select(builder.construct(ProductSourceRow.class, root.get("id"), root.get("name"), root.get("price"),
+                root.get("version"), source.get("id")));
+        query.where(specification.toPredicate(root, query, builder));
+        Sort totalSort = sort.getOrderFor("id") == null ? sort.and(Sort.by("id")) : sort;
+        query.orderBy(QueryUtils.toOrders(totalSort, root, builder));
+        List<ProductView> views = new ArrayList<>();
+        try (Stream<ProductSourceRow> rows = entityManager.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .getResultStream()) {
+            Stream<ProductSourceRow> neededRows = limit.isLimited() ? rows.takeWhile(firstProducts(limit.max())) : rows;
+            ProductView.groupRows(neededRows.iterator(), views::add);
+        }
+        return views;
+    }
+
+    /**
+     * Accepts the rows of the first {@code count} products, the rows of a
+     * product being consecutive as the order ends with its id.
+     */
+    private static Predicate<ProductSourceRow> firstProducts(int count) {
+        return new Predicate<>() {
+            private Long currentId;
+            private int products;
+
+            @Override
+            public boolean test(ProductSourceRow row) {
+                if (!row.id().equals(currentId)) {
+                    currentId = row.id();
+                    products++;
+                }
+                return products <= count;
+            }
+        };
+    }
+}
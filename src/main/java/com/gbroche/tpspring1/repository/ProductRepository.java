@@ -1,7 +1,187 @@
 package com.gbroche.tpspring1.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.gbroche.tpspring1.dto.ProductEdge;
+import com.gbroche.tpspring1.dto.ProductFilter;
+import com.gbroche.tpspring1.dto.ProductPrice;
+import com.gbroche.tpspring1.dto.ProductRow;
+import com.gbroche.tpspring1.dto.ProductSourceRow;
+import com.gbroche.tpspring1.dto.ProductView;
 import com.gbroche.tpspring1.model.Product;
+
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductIdQueries {
+
+    /**
+     * Every product with its direct sources fetched in the same query, nested
+     * sources are then batch loaded through the mapping's batch size.
+     */
+    @EntityGraph(attributePaths = "sources")
+    @Query("select p from Product p order by p.id")
+    List<Product> findAllWithSources();
+
+    @EntityGraph(attributePaths = "sources")
+    Optional<Product> findWithSourcesById(Long id);
+
+    /**
+     * Resolves a set of ids in a single IN query, ids without a product are
+     * simply absent from the result.
+     */
+    @EntityGraph(attributePaths = "sources")
+    List<Product> findAllWithSourcesByIdIn(Collection<Long> ids);
+
+    /**
+     * Shifts the price of the given products, bumping their version so that
+     * concurrent updates based on the former price are rejected.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Product p set p.price = p.price + :delta, p.version = p.version + 1 where p.id in :ids")
+    int shiftPrices(Collection<Long> ids, double delta);
+
+    /**
+     * Compare-and-set of name and price, applied only if the product is still
+     * at the expected version.
+     *
+     * @return 0 if the product does not exist or has another version
+     */
+    @Modifying
+    @Query("update Product p set p.name = :name, p.price = :price, p.version = p.version + 1"
+            + " where p.id = :id and p.version = :version")
+    int updateIfVersion(Long id, long version, String name, double price);
+
+    /**
+     * Removes the given product from every bundle it is a source of.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete from product_sources where source_id = :sourceId", nativeQuery = true)
+    int deleteSourceLinks(Long sourceId);
+
+    /**
+     * Prices of the given products, their rows staying locked until the end of
+     * the transaction so that they cannot change before being written.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select new com.gbroche.tpspring1.dto.ProductPrice(p.id, p.price) from Product p where p.id in :ids")
+    List<ProductPrice> lockPricesByIdIn(Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update Product p set p.price = p.price * :factor + :delta, p.version = p.version + 1"
+            + " where p.id in :ids")
+    int reprice(Collection<Long> ids, double factor, double delta);
+
+    /**
+     * Removes the given products from every bundle they are a source of, and
+     * unlinks the bundles among them from their own sources.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "delete from product_sources where product_id in :ids or source_id in :ids", nativeQuery = true)
+    int deleteAllLinks(Collection<Long> ids);
+
+    @Query("select new com.gbroche.tpspring1.dto.ProductSourceRow(p.id, p.name, p.price, p.version, s.id)"
+            + " from Product p left join p.sources s order by p.id")
+    List<ProductSourceRow> findAllRows();
+
+    @Query("select new com.gbroche.tpspring1.dto.ProductSourceRow(p.id, p.name, p.price, p.version, s.id)"
+            + " from Product p left join p.sources s where p.id in :ids order by p.id")
+    List<ProductSourceRow> findRowsByIdIn(Collection<Long> ids);
+
+    /**
+     * Streams the whole table ordered by id, must be consumed inside a
+     * transaction and closed afterwards.
+     */
+    @Query("select new com.gbroche.tpspring1.dto.ProductSourceRow(p.id, p.name, p.price, p.version, s.id)"
+            + " from Product p left join p.sources s order by p.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<ProductSourceRow> streamAllRows();
+
+    /**
+     * Keyset page: ids strictly greater than the given cursor, ordered.
+     */
+    @Query("select p.id from Product p where p.id > :afterId order by p.id")
+    List<Long> findIdsAfter(long afterId, Limit limit);
+
+    @Query("select new com.gbroche.tpspring1.dto.ProductRow(p.id, p.name, p.price, p.version)"
+            + " from Product p where p.id > :afterId order by p.id")
+    List<ProductRow> findRowsAfter(long afterId, Limit limit);
+
+    /**
+     * Keyset page of the bundle to source links, ordered by bundle then
+     * source.
+     */
+    @Query("select new com.gbroche.tpspring1.dto.ProductEdge(p.id, s.id) from Product p join p.sources s"
+            + " where p.id > :afterProductId or (p.id = :afterProductId and s.id > :afterSourceId)"
+            + " order by p.id, s.id")
+    List<ProductEdge> findEdgesAfter(long afterProductId, long afterSourceId, Limit limit);
+
+    /**
+     * Runs on the primary when called outside of a transaction, the callers
+     * comparing it with what they just tried to write.
+     */
+    default Optional<ProductView> findViewById(Long id) {
+        return ProductView.groupRows(findRowsByIdIn(List.of(id))).stream().findFirst();
+    }
+
+    /**
+     * The listings below are read-only transactions of their own when called
+     * outside of one, and so read from the replica when there is one.
+     */
+    @Transactional(readOnly = true)
+    default List<ProductView> findAllViews() {
+        return ProductView.groupRows(findAllRows());
+    }
+
+    @Transactional(readOnly = true)
+    default List<ProductView> findViewsAfter(long afterId, Limit limit) {
+        List<Long> ids = findIdsAfter(afterId, limit);
+        return ids.isEmpty() ? List.of() : ProductView.groupRows(findRowsByIdIn(ids));
+    }
+
+    /**
+     * Views of the products matching the filter, in the given order.
+     */
+    @Transactional(readOnly = true)
+    default List<ProductView> findViews(ProductFilter filter, Sort sort, Limit limit) {
+        return findViews(ProductSpecifications.matching(filter), sort, limit);
+    }
+
+    /**
+     * Views of the given products in the order of the ids, ids without a
+     * product are skipped.
+     */
+    @Transactional(readOnly = true)
+    default List<ProductView> findViewsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, ProductView> viewsById = ProductView.groupRows(findRowsByIdIn(ids)).stream()
+                .collect(Collectors.toMap(ProductView::id, Function.identity()));
+        return ids.stream().map(viewsById::get).filter(Objects::nonNull).toList();
+    }
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+    @Transactional(readOnly = true)
+    default List<ProductView> findViewsAfter(long afterId, Limit limit, ProductFilter filter) {
+        return findViews(ProductSpecifications.matching(filter).and(ProductSpecifications.idGreaterThan(afterId)),
+                Sort.by("id"), limit);
+    }
 }
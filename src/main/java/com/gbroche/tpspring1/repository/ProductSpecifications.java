@@ -0,0 +1,50 @@
+package com.gbroche.tpspring1.repository;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.gbroche.tpspring1.dto.ProductFilter;
+import com.gbroche.tpspring1.model.Product;
+
+/**
+ * Criteria of the product listings, each of them backed by an index.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> matching(ProductFilter filter) {
+        Specification<Product> specification = (root, query, builder) -> builder.conjunction();
+        if (filter.namePrefix() != null && !filter.namePrefix().isEmpty()) {
+            specification = specification.and(nameStartsWith(filter.namePrefix()));
+        }
+        if (filter.minPrice() != null) {
+            specification = specification.and((root, query, builder) -> builder.ge(root.get("price"),
+                    filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            specification = specification.and((root, query, builder) -> builder.le(root.get("price"),
+                    filter.maxPrice()));
+        }
+        if (filter.bundles() != null) {
+            specification = specification.and(filter.bundles() ? isBundle() : Specification.not(isBundle()));
+        }
+        return specification;
+    }
+
+    public static Specification<Product> idGreaterThan(long afterId) {
+        return (root, query, builder) -> builder.gt(root.get("id"), afterId);
+    }
+
+    /**
+     * Escaped {@code like 'prefix%'}, which can use the index on the name.
+     */
+    static Specification<Product> nameStartsWith(String prefix) {
+        String escaped = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return (root, query, builder) -> builder.like(root.get("name"), escaped + "%", '\\');
+    }
+
+    static Specification<Product> isBundle() {
+        return (root, query, builder) -> builder.isNotEmpty(root.get("sources"));
+    }
+}
@@ -0,0 +1,238 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.util.LongHashSet;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory materialization of every bundle's closure: the flattened set of
+ * leaf products it is made of and its price, along with the reverse edges from
+ * a product to the bundles directly containing it. Built once at startup and
+ * then kept up to date by {@link ProductService}, so recursion checks and price
+ * propagation never walk the lazily loaded sources.
+ *
+ * <p>
+ * Products written behind the application's back are indexed lazily from
+ * their entity the first time they are looked up, the ones written by the
+ * other nodes are applied by {@link ProductChangeRelay}.
+ */
+@Component
+public class BundleClosureIndex {
+    private final ProductRepository repository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+    private final Map<Long, Closure> closures = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> parentIds = new ConcurrentHashMap<>();
+    private final Map<Long, List<Long>> sourceIds = new ConcurrentHashMap<>();
+
+    /**
+     * @param leafIds sorted ids of the leaf products, never to be modified
+     */
+    public record Closure(long[] leafIds, double price) {
+    }
+
+    public BundleClosureIndex(ProductRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Runs first once the application is ready, the warm-up relying on it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuild() {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            synchronized (this) {
+                closures.clear();
+                parentIds.clear();
+                sourceIds.clear();
+                repository.findAllWithSources().forEach(this::register);
+            }
+        });
+    }
+
+    public Optional<Closure> find(Long id) {
+        return Optional.ofNullable(closures.get(id));
+    }
+
+    /**
+     * Closure of the given product, computed from its sources and indexed if
+     * the product was not known yet.
+     */
+    public Closure closureOf(Product product) {
+        Closure closure = closures.get(product.getId());
+        return closure != null ? closure : register(product);
+    }
+
+    /**
+     * Indexes a product and the reverse edges from its sources, computing the
+     * closure of sources that are not indexed yet.
+     */
+    public synchronized Closure register(Product product) {
+        Closure known = closures.get(product.getId());
+        if (known != null) {
+            return known;
+        }
+        Closure closure;
+        if (product.getSources().isEmpty()) {
+            closure = new Closure(new long[] { product.getId() }, product.getPrice());
+        } else {
+            List<long[]> sourceLeafIds = new ArrayList<>();
+            int leafCount = 0;
+            for (Product source : product.getSources()) {
+                long[] leafIds = register(source).leafIds();
+                sourceLeafIds.add(leafIds);
+                leafCount += leafIds.length;
+                parentIds.computeIfAbsent(source.getId(), id -> ConcurrentHashMap.newKeySet()).add(product.getId());
+            }
+            LongHashSet leafIds = new LongHashSet(leafCount);
+            sourceLeafIds.forEach(ids -> Arrays.stream(ids).forEach(leafIds::add));
+            closure = new Closure(leafIds.toSortedArray(), product.getPrice());
+            sourceIds.put(product.getId(), product.getSources().stream().map(Product::getId).toList());
+        }
+        closures.put(product.getId(), closure);
+        return closure;
+    }
+
+    /**
+     * Direct sources of the given product, empty for a plain product.
+     */
+    public List<Long> sourceIdsOf(Long id) {
+        return sourceIds.getOrDefault(id, List.of());
+    }
+
+    /**
+     * Whether the given products share at least one leaf product, at any
+     * nesting depth.
+     */
+    public boolean anyOverlap(List<Product> products) {
+        List<long[]> leafIdSets = new ArrayList<>(products.size());
+        for (Product product : products) {
+            leafIdSets.add(closureOf(product).leafIds());
+        }
+        return LeafOverlapDetector.anyOverlap(leafIdSets);
+    }
+
+    /**
+     * Every bundle containing the given product, directly or through another
+     * bundle.
+     */
+    public Set<Long> ancestorsOf(Long id) {
+        Set<Long> ancestors = new HashSet<>();
+        Deque<Long> toVisit = new ArrayDeque<>();
+        toVisit.push(id);
+        while (!toVisit.isEmpty()) {
+            for (Long parentId : parentIds.getOrDefault(toVisit.pop(), Set.of())) {
+                if (ancestors.add(parentId)) {
+                    toVisit.push(parentId);
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * Records a price change of a product, every bundle containing it has its
+     * price shifted by the same amount.
+     */
+    public synchronized void changePrice(Long id, double newPrice) {
+        Closure closure = closures.get(id);
+        if (closure == null) {
+            return;
+        }
+        double delta = newPrice - closure.price();
+        closures.put(id, new Closure(closure.leafIds(), newPrice));
+        for (Long ancestorId : ancestorsOf(id)) {
+            closures.computeIfPresent(ancestorId,
+                    (key, ancestor) -> new Closure(ancestor.leafIds(), ancestor.price() + delta));
+        }
+    }
+
+    /**
+     * Drops a deleted product: the bundles containing it lose its leaves and
+     * its price.
+     */
+    public synchronized void remove(Long id) {
+        Closure removed = closures.remove(id);
+        if (removed != null) {
+            for (Long ancestorId : ancestorsOf(id)) {
+                closures.computeIfPresent(ancestorId, (key, ancestor) -> new Closure(
+                        Arrays.stream(ancestor.leafIds())
+                                .filter(leafId -> Arrays.binarySearch(removed.leafIds(), leafId) < 0)
+                                .toArray(),
+                        ancestor.price() - removed.price()));
+            }
+        }
+        for (Long parentId : parentIds.getOrDefault(id, Set.of())) {
+            sourceIds.computeIfPresent(parentId, (key, sources) -> sources.stream()
+                    .filter(sourceId -> !sourceId.equals(id))
+                    .toList());
+        }
+        for (Long sourceId : sourceIds.getOrDefault(id, List.of())) {
+            Set<Long> parents = parentIds.get(sourceId);
+            if (parents != null) {
+                parents.remove(id);
+            }
+        }
+        parentIds.remove(id);
+        sourceIds.remove(id);
+    }
+
+    /**
+     * Applies a change committed by another node, reading the products
+     * concerned from the primary. Prices are set rather than shifted, the
+     * events listing every bundle whose price moved, so that the result does
+     * not depend on the order the changes arrive in.
+     */
+    public synchronized void apply(ProductChangeEvent event) {
+        Set<Long> changedIds = new HashSet<>(event.productIds());
+        if (event.type() == ProductChangeEvent.Type.DELETED) {
+            for (Long id : event.productIds()) {
+                changedIds.addAll(ancestorsOf(id));
+                remove(id);
+            }
+            changedIds.removeAll(event.productIds());
+        }
+        if (changedIds.isEmpty()) {
+            return;
+        }
+        primaryTransaction.executeWithoutResult(status -> {
+            List<Long> unknownIds = new ArrayList<>();
+            for (ProductView view : ProductView.groupRows(repository.findRowsByIdIn(changedIds))) {
+                Closure known = closures.get(view.id());
+                if (known == null) {
+                    unknownIds.add(view.id());
+                } else {
+                    closures.put(view.id(), new Closure(known.leafIds(), view.price()));
+                }
+            }
+            if (!unknownIds.isEmpty()) {
+                repository.findAllWithSourcesByIdIn(unknownIds).forEach(this::register);
+            }
+        });
+    }
+}
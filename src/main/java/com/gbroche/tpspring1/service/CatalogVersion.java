@@ -0,0 +1,73 @@
+package com.gbroche.tpspring1.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Counter of the product changes committed since startup, tagging the state
+ * of the whole catalog without reading it. The startup time is part of the
+ * tag so that a restart never gives back a tag already handed out.
+ *
+ * <p>
+ * The counter only moves after a commit: read before a query, the tag can be
+ * older than the data returned but never newer, which at worst costs a client
+ * one full response more. A read replica may not have a change yet when the
+ * counter moves, so the catalog is read from the primary until
+ * {@code products.datasource.replica.max-lag} has passed since the last
+ * change.
+ */
+@Component
+public class CatalogVersion {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong changes = new AtomicLong();
+    private final TransactionTemplate primaryTransaction;
+    private final long replicaMaxLagNanos;
+    private volatile long lastChangeNanos;
+
+    public CatalogVersion(PlatformTransactionManager transactionManager,
+            @Value("${products.datasource.replica.max-lag:1s}") Duration replicaMaxLag) {
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.replicaMaxLagNanos = replicaMaxLag.toNanos();
+    }
+
+    /**
+     * Also counts the changes committed by the other nodes, relayed by
+     * {@link ProductChangeRelay}.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        // before the counter, whoever sees the new tag also sees the change as recent
+        lastChangeNanos = System.nanoTime();
+        changes.incrementAndGet();
+    }
+
+    public String current() {
+        return epoch + "-" + changes.get();
+    }
+
+    /**
+     * Whether the last change is recent enough for the replica to possibly
+     * still miss it.
+     */
+    public boolean changedRecently() {
+        return changes.get() > 0 && System.nanoTime() - lastChangeNanos < replicaMaxLagNanos;
+    }
+
+    /**
+     * Runs a read of the catalog as is, or in a primary transaction which the
+     * read-only transactions of the query join while the last change is
+     * recent, so that the data is never older than a tag read before it.
+     */
+    public <T> T read(Supplier<T> query) {
+        return changedRecently() ? primaryTransaction.execute(status -> query.get()) : query.get();
+    }
+}
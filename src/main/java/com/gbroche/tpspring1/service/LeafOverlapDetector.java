@@ -0,0 +1,75 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.List;
+
+import com.gbroche.tpspring1.util.LongHashSet;
+
+/**
+ * Tells whether flattened bundle closures share at least one leaf product.
+ * Works on the sorted {@code long[]} leaf ids of {@link BundleClosureIndex}
+ * and stops at the first shared leaf.
+ */
+public final class LeafOverlapDetector {
+
+    private LeafOverlapDetector() {
+    }
+
+    public static boolean anyOverlap(List<long[]> leafIdSets) {
+        if (leafIdSets.size() < 2) {
+            return false;
+        }
+        if (leafIdSets.size() == 2) {
+            return intersects(leafIdSets.get(0), leafIdSets.get(1));
+        }
+        // the largest set is only probed, never inserted
+        int largest = 0;
+        int othersSize = 0;
+        for (int i = 0; i < leafIdSets.size(); i++) {
+            othersSize += leafIdSets.get(i).length;
+            if (leafIdSets.get(i).length > leafIdSets.get(largest).length) {
+                largest = i;
+            }
+        }
+        othersSize -= leafIdSets.get(largest).length;
+        LongHashSet seen = new LongHashSet(othersSize);
+        for (int i = 0; i < leafIdSets.size(); i++) {
+            if (i == largest) {
+                continue;
+            }
+            for (long leafId : leafIdSets.get(i)) {
+                if (!seen.add(leafId)) {
+                    return true;
+                }
+            }
+        }
+        for (long leafId : leafIdSets.get(largest)) {
+            if (seen.contains(leafId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merge walk over two sorted arrays, no allocation at all.
+     */
+    static boolean intersects(long[] left, long[] right) {
+        if (left.length == 0 || right.length == 0
+                || left[left.length - 1] < right[0] || right[right.length - 1] < left[0]) {
+            return false;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] == right[j]) {
+                return true;
+            }
+            if (left[i] < right[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,234 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.gbroche.tpspring1.dto.BatchReport;
+import com.gbroche.tpspring1.dto.ProductPrice;
+import com.gbroche.tpspring1.dto.ProductSelection;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.repository.ProductSpecifications;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Set-based variants of the product mutations. The selected products are
+ * processed by chunks, each in its own transaction and written with a few bulk
+ * statements whatever its size, so that a batch over tens of thousands of
+ * products neither holds locks for long nor fills the persistence context.
+ *
+ * <p>
+ * Bundles are kept consistent the same way as by {@link ProductService}: the
+ * price change or removal of a product is carried over to every bundle
+ * containing it.
+ */
+@Service
+public class ProductBatchService {
+    private final ProductRepository repository;
+    private final BundleClosureIndex closureIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    public ProductBatchService(ProductRepository repository, BundleClosureIndex closureIndex,
+            EntityManager entityManager, PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher, @Value("${products.batch.chunk-size:500}") int chunkSize) {
+        this.repository = repository;
+        this.closureIndex = closureIndex;
+        this.entityManager = entityManager;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the price of every selected plain product to
+     * {@code price * factor + delta}. Bundles are skipped, their price follows
+     * the one of their components.
+     */
+    public BatchReport changePrices(ProductSelection selection, double factor, double delta) {
+        return forEachChunk(selection, ids -> changePrices(ids, factor, delta));
+    }
+
+    public BatchReport delete(ProductSelection selection) {
+        return forEachChunk(selection, this::delete);
+    }
+
+    /**
+     * Copies the name and price of every selected product into a new plain
+     * product, as {@link ProductService#duplicate} does.
+     */
+    public BatchReport duplicate(ProductSelection selection) {
+        return forEachChunk(selection, this::duplicate);
+    }
+
+    private BatchReport forEachChunk(ProductSelection selection, Function<List<Long>, List<BatchReport.Item>> chunk) {
+        List<Long> ids = selection.ids() != null
+                ? List.copyOf(new LinkedHashSet<>(selection.ids()))
+                : repository.findIds(ProductSpecifications.matching(selection.filter()), Sort.by("id"),
+                        Limit.unlimited());
+        List<BatchReport.Item> items = new ArrayList<>(ids.size());
+        int chunks = 0;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            try {
+                items.addAll(chunk.apply(ids.subList(from, Math.min(from + chunkSize, ids.size()))));
+            } catch (DataAccessException | TransactionException e) {
+                return new BatchReport(chunks, items, "Chunk " + chunks + " was rolled back: "
+                        + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            }
+            chunks++;
+        }
+        return new BatchReport(chunks, items, null);
+    }
+
+    private List<BatchReport.Item> changePrices(List<Long> ids, double factor, double delta) {
+        Map<Long, Double> newPrices = new LinkedHashMap<>();
+        Map<Long, Double> ancestorShifts = new HashMap<>();
+        List<BatchReport.Item> items = transaction.execute(status -> {
+            Map<Long, Double> prices = lockPrices(ids);
+            List<BatchReport.Item> chunkItems = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Double price = prices.get(id);
+                if (price == null) {
+                    chunkItems.add(BatchReport.Item.of(id, BatchReport.Status.NOT_FOUND));
+                } else if (!closureIndex.sourceIdsOf(id).isEmpty()) {
+                    chunkItems.add(BatchReport.Item.of(id, BatchReport.Status.SKIPPED_BUNDLE));
+                } else {
+                    double newPrice = price * factor + delta;
+                    newPrices.put(id, newPrice);
+                    for (Long ancestorId : closureIndex.ancestorsOf(id)) {
+                        ancestorShifts.merge(ancestorId, newPrice - price, Double::sum);
+                    }
+                    chunkItems.add(BatchReport.Item.of(id, BatchReport.Status.UPDATED));
+                }
+            }
+            if (!newPrices.isEmpty()) {
+                repository.reprice(newPrices.keySet(), factor, delta);
+            }
+            shiftPrices(ancestorShifts);
+            List<Long> changedIds = new ArrayList<>(newPrices.keySet());
+            changedIds.addAll(ancestorShifts.keySet());
+            publish(ProductChangeEvent.Type.UPDATED, changedIds);
+            return chunkItems;
+        });
+        newPrices.forEach(closureIndex::changePrice);
+        return items;
+    }
+
+    /**
+     * A deleted product is subtracted from the bundles containing it, unless
+     * it is contained through a bundle deleted as well: the bundle's price
+     * already accounts for it.
+     */
+    private List<BatchReport.Item> delete(List<Long> ids) {
+        Set<Long> deletedIds = new LinkedHashSet<>();
+        Map<Long, Double> ancestorShifts = new HashMap<>();
+        List<BatchReport.Item> items = transaction.execute(status -> {
+            Map<Long, Double> prices = lockPrices(ids);
+            deletedIds.addAll(prices.keySet());
+            for (Long id : deletedIds) {
+                Set<Long> ancestorIds = closureIndex.ancestorsOf(id);
+                Set<Long> coveredIds = ancestorIds.stream()
+                        .filter(deletedIds::contains)
+                        .flatMap(deletedAncestorId -> closureIndex.ancestorsOf(deletedAncestorId).stream())
+                        .collect(Collectors.toSet());
+                for (Long ancestorId : ancestorIds) {
+                    if (!deletedIds.contains(ancestorId) && !coveredIds.contains(ancestorId)) {
+                        ancestorShifts.merge(ancestorId, -prices.get(id), Double::sum);
+                    }
+                }
+            }
+            shiftPrices(ancestorShifts);
+            if (!deletedIds.isEmpty()) {
+                repository.deleteAllLinks(deletedIds);
+                repository.deleteAllByIdInBatch(deletedIds);
+            }
+            publish(ProductChangeEvent.Type.DELETED, List.copyOf(deletedIds));
+            publish(ProductChangeEvent.Type.UPDATED, List.copyOf(ancestorShifts.keySet()));
+            return ids.stream()
+                    .map(id -> BatchReport.Item.of(id, deletedIds.contains(id)
+                            ? BatchReport.Status.DELETED
+                            : BatchReport.Status.NOT_FOUND))
+                    .toList();
+        });
+        deletedIds.forEach(closureIndex::remove);
+        return items;
+    }
+
+    private List<BatchReport.Item> duplicate(List<Long> ids) {
+        List<Product> duplicates = new ArrayList<>();
+        List<BatchReport.Item> items = transaction.execute(status -> {
+            Map<Long, ProductView> views = ProductView.groupRows(repository.findRowsByIdIn(ids)).stream()
+                    .collect(Collectors.toMap(ProductView::id, Function.identity()));
+            List<Product> copies = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                ProductView view = views.get(id);
+                Product copy = null;
+                if (view != null) {
+                    copy = new Product(null, view.name() + ProductService.COPY_SUFFIX, view.price(),
+                            new ArrayList<>());
+                    entityManager.persist(copy);
+                    duplicates.add(copy);
+                }
+                copies.add(copy);
+            }
+            entityManager.flush();
+            entityManager.clear();
+            publish(ProductChangeEvent.Type.CREATED, duplicates.stream().map(Product::getId).toList());
+            List<BatchReport.Item> chunkItems = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                Product copy = copies.get(i);
+                chunkItems.add(copy == null
+                        ? BatchReport.Item.of(ids.get(i), BatchReport.Status.NOT_FOUND)
+                        : new BatchReport.Item(ids.get(i), BatchReport.Status.DUPLICATED, copy.getId()));
+            }
+            return chunkItems;
+        });
+        duplicates.forEach(closureIndex::register);
+        return items;
+    }
+
+    private Map<Long, Double> lockPrices(List<Long> ids) {
+        return repository.lockPricesByIdIn(ids).stream()
+                .collect(Collectors.toMap(ProductPrice::id, ProductPrice::price));
+    }
+
+    /**
+     * Shifts the given bundles with one bulk update per distinct amount, a
+     * uniform change of their components giving only a handful of them.
+     */
+    private void shiftPrices(Map<Long, Double> shifts) {
+        shifts.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                .forEach((shift, bundleIds) -> repository.shiftPrices(bundleIds, shift));
+    }
+
+    private void publish(ProductChangeEvent.Type type, List<Long> ids) {
+        if (!ids.isEmpty()) {
+            eventPublisher.publishEvent(new ProductChangeEvent(type, ids));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.gbroche.tpspring1.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.gbroche.tpspring1.dto.CacheStatsView;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bounded read-through cache of product views by id. A view only refers to
+ * its sources by id, so it has to be evicted only when the product itself
+ * changes: {@link ProductService} lists every bundle whose price or sources
+ * change in its events, and {@link ProductChangeRelay} evicts the products
+ * changed by the other nodes.
+ *
+ * <p>
+ * Misses are read from the replica, except for the products changed less
+ * than {@code products.datasource.replica.max-lag} ago which are read from
+ * the primary, so that a lagging replica never puts a former version back.
+ */
+@Service
+public class ProductCache implements MeterBinder {
+    private final ProductRepository repository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+    private final Cache<Long, ProductView> cache;
+    private final Cache<Long, Boolean> recentlyChanged;
+
+    public ProductCache(ProductRepository repository, PlatformTransactionManager transactionManager,
+            @Value("${products.cache.maximum-size:10000}") long maximumSize,
+            @Value("${products.cache.expire-after-write:10m}") Duration expireAfterWrite,
+            @Value("${products.datasource.replica.max-lag:1s}") Duration replicaMaxLag) {
+        this.repository = repository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.recentlyChanged = Caffeine.newBuilder()
+                .expireAfterWrite(replicaMaxLag)
+                .build();
+    }
+
+    public Optional<ProductView> get(Long id) {
+        return Optional.ofNullable(cache.get(id, this::load));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        invalidate(event.productIds());
+    }
+
+    public void invalidate(Collection<Long> ids) {
+        ids.forEach(id -> recentlyChanged.put(id, Boolean.TRUE));
+        cache.invalidateAll(ids);
+    }
+
+    /**
+     * Ids of the cached products read the most often, hottest first.
+     */
+    public List<Long> hottestIds(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(limit).keySet()))
+                .orElseGet(List::of);
+    }
+
+    /**
+     * Loads the given products in the cache with a single query.
+     */
+    public void preload(List<Long> ids) {
+        readOnlyTransaction.execute(status -> repository.findViewsByIds(ids))
+                .forEach(view -> cache.put(view.id(), view));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "products");
+    }
+
+    public CacheStatsView stats() {
+        CacheStats stats = cache.stats();
+        return new CacheStatsView(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.loadCount(), stats.evictionCount());
+    }
+
+    private ProductView load(Long id) {
+        TransactionTemplate transaction = recentlyChanged.getIfPresent(id) != null
+                ? primaryTransaction
+                : readOnlyTransaction;
+        return transaction.execute(status -> repository.findViewById(id).orElse(null));
+    }
+}
@@ -0,0 +1,61 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.UUID;
+
+import com.gbroche.tpspring1.dto.ProductChangeNotice;
+import com.gbroche.tpspring1.event.ProductChangeChannel;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the in-memory state of this node coherent with the other nodes
+ * sharing the database. The changes committed here are published on the
+ * {@link ProductChangeChannel}, and the ones committed elsewhere are applied
+ * to the product cache, the search index, the catalog version and the bundle
+ * closures as if they had been committed here.
+ */
+@Component
+public class ProductChangeRelay {
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ProductChangeChannel channel;
+    private final ProductCache productCache;
+    private final ProductSearchIndex searchIndex;
+    private final CatalogVersion catalogVersion;
+    private final BundleClosureIndex closureIndex;
+    private final Runnable unsubscribe;
+
+    public ProductChangeRelay(ProductChangeChannel channel, ProductCache productCache, ProductSearchIndex searchIndex,
+            CatalogVersion catalogVersion, BundleClosureIndex closureIndex) {
+        this.channel = channel;
+        this.productCache = productCache;
+        this.searchIndex = searchIndex;
+        this.catalogVersion = catalogVersion;
+        this.closureIndex = closureIndex;
+        this.unsubscribe = channel.subscribe(this::onNotice);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        channel.publish(ProductChangeNotice.of(nodeId, event));
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void stop() {
+        unsubscribe.run();
+    }
+
+    private void onNotice(ProductChangeNotice notice) {
+        if (notice.originNodeId().equals(nodeId)) {
+            return;
+        }
+        ProductChangeEvent event = notice.toEvent();
+        closureIndex.apply(event);
+        productCache.invalidate(event.productIds());
+        searchIndex.onProductChange(event);
+        catalogVersion.onProductChange(event);
+    }
+}
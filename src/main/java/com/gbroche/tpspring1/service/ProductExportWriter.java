@@ -0,0 +1,144 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gbroche.tpspring1.dto.ProductEdge;
+import com.gbroche.tpspring1.dto.ProductRow;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes the whole catalog as a single document, in JSON or one of the binary
+ * formats:
+ * {@code {"products":[{"id","name","price","version"},...],"edges":[[bundleId,sourceId],...]}}.
+ *
+ * <p>
+ * Products then edges are read by keyset chunks of
+ * {@code products.export.chunk-size}, each in a short transaction of its own
+ * and written out before the next one is read, so neither memory nor a
+ * database connection is held for the length of the export. The export is
+ * therefore not a snapshot: changes committed while it runs may or may not
+ * be part of it.
+ */
+@Service
+public class ProductExportWriter {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+    public static final List<MediaType> FORMATS = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+            APPLICATION_SMILE);
+
+    private static final SerializableString PRODUCTS = new SerializedString("products");
+    private static final SerializableString EDGES = new SerializedString("edges");
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString VERSION = new SerializedString("version");
+
+    private final ProductRepository repository;
+    private final CatalogVersion catalogVersion;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+    private final Map<MediaType, JsonFactory> factories;
+    private final int chunkSize;
+
+    public ProductExportWriter(ProductRepository repository, ObjectMapper objectMapper,
+            CatalogVersion catalogVersion, PlatformTransactionManager transactionManager,
+            @Value("${products.export.chunk-size:1000}") int chunkSize) {
+        this.repository = repository;
+        this.catalogVersion = catalogVersion;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.factories = Map.of(MediaType.APPLICATION_JSON, objectMapper.getFactory(),
+                MediaType.APPLICATION_CBOR, new CBORFactory(),
+                APPLICATION_SMILE, new SmileFactory());
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param format one of {@link #FORMATS}
+     */
+    public void write(MediaType format, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factories.get(format).createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName(PRODUCTS);
+            generator.writeStartArray();
+            writeProducts(generator);
+            generator.writeEndArray();
+            generator.writeFieldName(EDGES);
+            generator.writeStartArray();
+            writeEdges(generator);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeProducts(JsonGenerator generator) throws IOException {
+        long afterId = 0;
+        List<ProductRow> chunk;
+        do {
+            long from = afterId;
+            chunk = chunkTransaction().execute(status -> repository.findRowsAfter(from, Limit.of(chunkSize)));
+            for (ProductRow product : chunk) {
+                generator.writeStartObject();
+                generator.writeFieldName(ID);
+                generator.writeNumber(product.id());
+                generator.writeFieldName(NAME);
+                generator.writeString(product.name());
+                generator.writeFieldName(PRICE);
+                generator.writeNumber(product.price());
+                generator.writeFieldName(VERSION);
+                generator.writeNumber(product.version());
+                generator.writeEndObject();
+            }
+            if (!chunk.isEmpty()) {
+                afterId = chunk.getLast().id();
+            }
+            generator.flush();
+        } while (chunk.size() == chunkSize);
+    }
+
+    private void writeEdges(JsonGenerator generator) throws IOException {
+        ProductEdge last = new ProductEdge(0, 0);
+        List<ProductEdge> chunk;
+        do {
+            ProductEdge from = last;
+            chunk = chunkTransaction().execute(status -> repository.findEdgesAfter(from.productId(),
+                    from.sourceId(), Limit.of(chunkSize)));
+            for (ProductEdge edge : chunk) {
+                generator.writeStartArray(edge, 2);
+                generator.writeNumber(edge.productId());
+                generator.writeNumber(edge.sourceId());
+                generator.writeEndArray();
+            }
+            if (!chunk.isEmpty()) {
+                last = chunk.getLast();
+            }
+            generator.flush();
+        } while (chunk.size() == chunkSize);
+    }
+
+    /**
+     * Each chunk is read from the primary while the last change is recent,
+     * see {@link CatalogVersion}.
+     */
+    private TransactionTemplate chunkTransaction() {
+        return catalogVersion.changedRecently() ? primaryTransaction : readOnlyTransaction;
+    }
+}
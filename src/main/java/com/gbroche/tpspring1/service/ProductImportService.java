@@ -0,0 +1,100 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.gbroche.tpspring1.dto.BulkImportReport;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.model.Product;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Imports products from either a JSON array or NDJSON, reading one product at
+ * a time and committing them in batches so memory stays bounded whatever the
+ * size of the payload.
+ */
+@Service
+public class ProductImportService {
+    private final ObjectMapper objectMapper;
+    private final ObjectReader productReader;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    public ProductImportService(ObjectMapper objectMapper, EntityManager entityManager,
+            PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+            @Value("${products.import.batch-size:500}") int batchSize) {
+        this.objectMapper = objectMapper;
+        this.productReader = objectMapper.readerFor(Product.class);
+        this.entityManager = entityManager;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    public BulkImportReport importProducts(InputStream body) throws IOException {
+        List<BulkImportReport.Batch> batches = new ArrayList<>();
+        List<Product> pending = new ArrayList<>(batchSize);
+        long imported = 0;
+        long position = 0;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            // a top level array is unwrapped, otherwise the body is a sequence of root objects (NDJSON)
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                position++;
+                pending.add(toNewProduct(productReader.readValue(parser, Product.class)));
+                if (pending.size() == batchSize) {
+                    imported += flush(pending, batches);
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            imported += flush(pending, batches);
+            return new BulkImportReport(imported, batches,
+                    "Invalid product at position " + position + ": " + e.getOriginalMessage());
+        }
+        imported += flush(pending, batches);
+        return new BulkImportReport(imported, batches, null);
+    }
+
+    private Product toNewProduct(Product parsed) {
+        // bulk import only creates plain products, bundles go through the bundle endpoint
+        return new Product(null, parsed.getName(), parsed.getPrice(), new ArrayList<>());
+    }
+
+    private int flush(List<Product> pending, List<BulkImportReport.Batch> batches) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        transaction.executeWithoutResult(status -> {
+            pending.forEach(entityManager::persist);
+            entityManager.flush();
+            entityManager.clear();
+            eventPublisher.publishEvent(new ProductChangeEvent(ProductChangeEvent.Type.CREATED,
+                    pending.stream().map(Product::getId).toList()));
+        });
+        int size = pending.size();
+        batches.add(new BulkImportReport.Batch(batches.size(), size,
+                pending.get(0).getId(), pending.get(size - 1).getId()));
+        pending.clear();
+        return size;
+    }
+}
@@ -0,0 +1,416 @@
+package com.gbroche.tpspring1.service;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import com.gbroche.tpspring1.dto.ProductSourceRow;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory inverted index of product names, built at startup and then kept
+ * up to date from the committed {@link ProductChangeEvent}s, so a search only
+ * costs lookups in the term dictionary whatever the size of the table.
+ *
+ * <p>
+ * Names are split on anything that is not a letter or a digit, lowercased and
+ * stripped of their accents. Every term of a query has to be matched by a
+ * product, either exactly, as the prefix of one of its terms or, for terms of
+ * at least {@value #MIN_FUZZY_LENGTH} characters, within a small edit distance
+ * to tolerate typos.
+ *
+ * <p>
+ * The typos are looked up in a deletion neighbourhood: every term is also
+ * indexed under the variants obtained by deleting up to two of its characters,
+ * so the terms close to a query term are those sharing one of its own
+ * deletion variants, found in a bounded number of lookups.
+ *
+ * <p>
+ * Only the most selective term of a query, the one that is the prefix of the
+ * fewest indexed products, is looked up in the dictionary. Its matches are the
+ * candidates, checked against the other terms of the query with the terms of
+ * each product. The candidates are read exact matches first, and the search
+ * stops once {@value #MAX_MATCHES} of them matched the whole query, so that a
+ * query made of short terms only does not score most of the catalog.
+ */
+@Component
+public class ProductSearchIndex {
+    static final int MIN_FUZZY_LENGTH = 4;
+    static final int MAX_MATCHES = 1000;
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FUZZY_SCORE = 1;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private final ProductRepository repository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Set<Long>> postings = new TreeMap<>();
+    private final Map<Long, String[]> termsById = new HashMap<>();
+    private final Map<String, Set<String>> termsByDeletion = new HashMap<>();
+
+    public ProductSearchIndex(ProductRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Runs first once the application is ready, the warm-up relying on it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuild() {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<ProductSourceRow> rows = repository.streamAllRows()) {
+                lock.writeLock().lock();
+                try {
+                    postings.clear();
+                    termsById.clear();
+                    termsByDeletion.clear();
+                    rows.forEach(row -> {
+                        if (!termsById.containsKey(row.id())) {
+                            index(row.id(), row.name());
+                        }
+                    });
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-reads the names of the created or updated products, bundles whose
+     * price only was shifted are simply indexed again with the same terms.
+     * The names are read from the primary, the replica possibly not having
+     * the change yet.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        if (event.type() == ProductChangeEvent.Type.DELETED) {
+            remove(event.productIds());
+            return;
+        }
+        Map<Long, String> names = new HashMap<>();
+        primaryTransaction.executeWithoutResult(status -> repository.findRowsByIdIn(event.productIds())
+                .forEach(row -> names.put(row.id(), row.name())));
+        lock.writeLock().lock();
+        try {
+            for (Long id : event.productIds()) {
+                unindex(id);
+                String name = names.get(id);
+                if (name != null) {
+                    index(id, name);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<Long> ids) {
+        lock.writeLock().lock();
+        try {
+            ids.forEach(this::unindex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the products matching every term of the query, best matches
+     * first and then by id.
+     */
+    public List<Long> search(String query, int limit) {
+        String[] queryTerms = tokenize(query);
+        if (queryTerms.length == 0) {
+            return List.of();
+        }
+        Map<Long, Integer> scores;
+        lock.readLock().lock();
+        try {
+            scores = match(queryTerms);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    static String[] tokenize(String text) {
+        String folded = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return SEPARATORS.splitAsStream(folded).filter(term -> !term.isEmpty()).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Total score of the products matching every query term, at most
+     * {@value #MAX_MATCHES} of them.
+     */
+    private Map<Long, Integer> match(String[] queryTerms) {
+        String driver = mostSelective(queryTerms);
+        Map<Long, Integer> scores = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        // best matches of the driving term first, a product keeping the score it is first seen with
+        for (Long id : postings.getOrDefault(driver, Set.of())) {
+            if (!collect(id, EXACT_SCORE, driver, queryTerms, seen, scores)) {
+                return scores;
+            }
+        }
+        for (Map.Entry<String, Set<Long>> entry : postings.tailMap(driver, false).entrySet()) {
+            if (!entry.getKey().startsWith(driver)) {
+                break;
+            }
+            for (Long id : entry.getValue()) {
+                if (!collect(id, PREFIX_SCORE, driver, queryTerms, seen, scores)) {
+                    return scores;
+                }
+            }
+        }
+        for (String term : fuzzyMatches(driver)) {
+            for (Long id : postings.get(term)) {
+                if (!collect(id, FUZZY_SCORE, driver, queryTerms, seen, scores)) {
+                    return scores;
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Scores a candidate matched by the driving term against the other query
+     * terms.
+     *
+     * @return false once {@value #MAX_MATCHES} products matched
+     */
+    private boolean collect(Long id, int driverScore, String driver, String[] queryTerms, Set<Long> seen,
+            Map<Long, Integer> scores) {
+        if (!seen.add(id)) {
+            return true;
+        }
+        String[] terms = termsById.get(id);
+        int score = driverScore;
+        for (String queryTerm : queryTerms) {
+            if (queryTerm.equals(driver)) {
+                continue;
+            }
+            int termScore = score(queryTerm, terms);
+            if (termScore == 0) {
+                return true;
+            }
+            score += termScore;
+        }
+        scores.put(id, score);
+        return scores.size() < MAX_MATCHES;
+    }
+
+    /**
+     * Query term being the prefix of the fewest indexed products, only
+     * counted up to the best count so far.
+     */
+    private String mostSelective(String[] queryTerms) {
+        String mostSelective = queryTerms[0];
+        if (queryTerms.length == 1) {
+            return mostSelective;
+        }
+        int fewest = MAX_MATCHES + 1;
+        for (String queryTerm : queryTerms) {
+            int count = 0;
+            for (Map.Entry<String, Set<Long>> entry : postings.tailMap(queryTerm, true).entrySet()) {
+                if (!entry.getKey().startsWith(queryTerm) || count >= fewest) {
+                    break;
+                }
+                count += entry.getValue().size();
+            }
+            if (count < fewest) {
+                mostSelective = queryTerm;
+                fewest = count;
+            }
+        }
+        return mostSelective;
+    }
+
+    /**
+     * Best score of the query term against the terms of a product, 0 if none
+     * matches it.
+     */
+    static int score(String queryTerm, String[] terms) {
+        int score = 0;
+        for (String term : terms) {
+            if (term.equals(queryTerm)) {
+                return EXACT_SCORE;
+            }
+            if (term.startsWith(queryTerm)) {
+                score = PREFIX_SCORE;
+            } else if (score == 0 && queryTerm.length() >= MIN_FUZZY_LENGTH) {
+                int maxEdits = maxEdits(queryTerm.length());
+                if (Math.abs(term.length() - queryTerm.length()) <= maxEdits
+                        && editDistance(queryTerm, term, maxEdits) <= maxEdits) {
+                    score = FUZZY_SCORE;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Indexed terms within the edit distance allowed for the query term, found
+     * through the deletion neighbourhood.
+     */
+    private Set<String> fuzzyMatches(String queryTerm) {
+        if (queryTerm.length() < MIN_FUZZY_LENGTH) {
+            return Set.of();
+        }
+        int maxEdits = maxEdits(queryTerm.length());
+        Set<String> matches = new HashSet<>();
+        for (String deletion : deletions(queryTerm, maxEdits)) {
+            for (String term : termsByDeletion.getOrDefault(deletion, Set.of())) {
+                if (editDistance(queryTerm, term, maxEdits) <= maxEdits) {
+                    matches.add(term);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static int maxEdits(int queryTermLength) {
+        return queryTermLength >= 2 * MIN_FUZZY_LENGTH ? 2 : 1;
+    }
+
+    /**
+     * Variants a term is indexed under: enough deletions for every query term
+     * allowed to reach it, a query term allowed two edits being at least
+     * {@code 2 * MIN_FUZZY_LENGTH} long. Shorter terms cannot be reached.
+     */
+    private static Set<String> neighbourhood(String term) {
+        if (term.length() < MIN_FUZZY_LENGTH - 1) {
+            return Set.of();
+        }
+        return deletions(term, maxEdits(term.length() + 2));
+    }
+
+    /**
+     * The term itself and every variant of it with up to {@code depth}
+     * characters deleted.
+     */
+    static Set<String> deletions(String term, int depth) {
+        Set<String> deletions = new HashSet<>();
+        deletions.add(term);
+        Set<String> level = Set.of(term);
+        for (int d = 0; d < depth; d++) {
+            Set<String> nextLevel = new HashSet<>();
+            for (String variant : level) {
+                for (int i = 0; i < variant.length(); i++) {
+                    String deletion = variant.substring(0, i) + variant.substring(i + 1);
+                    if (deletions.add(deletion)) {
+                        nextLevel.add(deletion);
+                    }
+                }
+            }
+            level = nextLevel;
+        }
+        return deletions;
+    }
+
+    /**
+     * Optimal string alignment distance, a swap of two adjacent characters
+     * counting as a single edit. Gives up with {@code maxEdits + 1} as soon as
+     * a whole row exceeds the bound.
+     */
+    static int editDistance(String a, String b, int maxEdits) {
+        int[] previousRow = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        int[] nextRow = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            row[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            nextRow[0] = i;
+            int rowMinimum = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(row[j] + 1, nextRow[j - 1] + 1), row[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, previousRow[j - 2] + 1);
+                }
+                nextRow[j] = distance;
+                rowMinimum = Math.min(rowMinimum, distance);
+            }
+            if (rowMinimum > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] recycled = previousRow;
+            previousRow = row;
+            row = nextRow;
+            nextRow = recycled;
+        }
+        return row[b.length()];
+    }
+
+    private void index(Long id, String name) {
+        String[] terms = name == null ? new String[0] : tokenize(name);
+        termsById.put(id, terms);
+        for (String term : terms) {
+            Set<Long> ids = postings.get(term);
+            if (ids == null) {
+                ids = new HashSet<>();
+                postings.put(term, ids);
+                for (String deletion : neighbourhood(term)) {
+                    termsByDeletion.computeIfAbsent(deletion, key -> new HashSet<>()).add(term);
+                }
+            }
+            ids.add(id);
+        }
+    }
+
+    private void unindex(Long id) {
+        String[] terms = termsById.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Set<Long> ids = postings.get(term);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(term);
+                for (String deletion : neighbourhood(term)) {
+                    Set<String> neighbours = termsByDeletion.get(deletion);
+                    neighbours.remove(term);
+                    if (neighbours.isEmpty()) {
+                        termsByDeletion.remove(deletion);
+                    }
+                }
+            }
+        }
+    }
+
+}
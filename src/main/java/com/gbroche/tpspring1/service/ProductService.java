@@ -0,0 +1,213 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.event.ProductChangeEvent;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Product mutations. Each one runs in a single transaction, keeps bundle prices
+ * consistent with their components and updates the {@link BundleClosureIndex}
+ * once committed.
+ */
+@Service
+public class ProductService {
+    static final int MAX_UPDATE_ATTEMPTS = 5;
+    static final String COPY_SUFFIX = " (Copy)";
+
+    private final ProductRepository repository;
+    private final ProductCache productCache;
+    private final BundleClosureIndex closureIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DistributionSummary bundleSizes;
+    private final DistributionSummary bundleLeafCounts;
+
+    public ProductService(ProductRepository repository, ProductCache productCache, BundleClosureIndex closureIndex,
+            ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.productCache = productCache;
+        this.closureIndex = closureIndex;
+        this.eventPublisher = eventPublisher;
+        this.bundleSizes = DistributionSummary.builder("products.bundle.size")
+                .description("Direct sources of the bundles created")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.bundleLeafCounts = DistributionSummary.builder("products.bundle.leaves")
+                .description("Leaf products of the bundles created, nested bundles flattened")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Transactional
+    public Product create(Product product) {
+        product.setVersion(null);
+        Product savedProduct = repository.save(product);
+        afterCommit(() -> closureIndex.register(savedProduct));
+        eventPublisher.publishEvent(ProductChangeEvent.created(savedProduct.getId()));
+        return savedProduct;
+    }
+
+    @Transactional
+    public Optional<Product> duplicate(Long id) {
+        return productCache.get(id).map(productToCopy -> {
+            Product duplicate = new Product();
+            duplicate.setName(productToCopy.name() + COPY_SUFFIX);
+            duplicate.setPrice(productToCopy.price());
+            Product savedDuplicate = repository.save(duplicate);
+            afterCommit(() -> closureIndex.register(savedDuplicate));
+            eventPublisher.publishEvent(ProductChangeEvent.created(savedDuplicate.getId()));
+            return savedDuplicate;
+        });
+    }
+
+    /**
+     * Saves a bundle of the given products, which must have been checked for
+     * overlapping components beforehand.
+     */
+    @Transactional
+    public Product createBundle(List<Product> baseProducts) {
+        Product newBundle = new Product();
+        String newBundleName = baseProducts.stream()
+                .map(Product::getName)
+                .collect(Collectors.joining("+"));
+        double newBundlePrice = baseProducts.stream()
+                .mapToDouble(product -> closureIndex.closureOf(product).price())
+                .sum();
+        newBundle.setName(newBundleName);
+        newBundle.setPrice(newBundlePrice);
+        newBundle.setSources(baseProducts);
+
+        Product savedBundle = repository.save(newBundle);
+        afterCommit(() -> {
+            bundleSizes.record(baseProducts.size());
+            bundleLeafCounts.record(closureIndex.register(savedBundle).leafIds().length);
+        });
+        eventPublisher.publishEvent(ProductChangeEvent.created(savedBundle.getId()));
+        return savedBundle;
+    }
+
+    /**
+     * Updates name and price with a compare-and-set on the product's version,
+     * a price change is carried over to every bundle containing the product.
+     *
+     * <p>
+     * When the product gives the version it was read at, the update is
+     * rejected if the product changed since. A product no bundle contains is
+     * then updated in a single statement, without reading it first. Otherwise
+     * its current price is needed for the bundles and the compare-and-set is
+     * made against the version read along with it, retried a few times if no
+     * version was given.
+     *
+     * @throws NoSuchElementException             if there is no product with
+     *                                            this id
+     * @throws OptimisticLockingFailureException if the product was modified
+     *                                            concurrently
+     */
+    @Transactional
+    public ProductView update(Long id, Product product) {
+        Long expectedVersion = product.getVersion();
+        Set<Long> ancestorIds = closureIndex.ancestorsOf(id);
+        if (expectedVersion != null && ancestorIds.isEmpty()) {
+            if (repository.updateIfVersion(id, expectedVersion, product.getName(), product.getPrice()) == 0) {
+                if (repository.findViewById(id).isEmpty()) {
+                    throw new NoSuchElementException("No product with id " + id);
+                }
+                throw conflict(id);
+            }
+            afterCommit(() -> closureIndex.changePrice(id, product.getPrice()));
+            eventPublisher.publishEvent(ProductChangeEvent.updated(id));
+            return new ProductView(id, product.getName(), product.getPrice(), expectedVersion + 1,
+                    closureIndex.sourceIdsOf(id));
+        }
+        for (int attempt = 1;; attempt++) {
+            ProductView current = repository.findViewById(id).orElseThrow();
+            if (expectedVersion != null && expectedVersion != current.version()) {
+                throw conflict(id);
+            }
+            if (repository.updateIfVersion(id, current.version(), product.getName(), product.getPrice()) == 1) {
+                return afterUpdate(current, product, ancestorIds);
+            }
+            if (expectedVersion != null || attempt == MAX_UPDATE_ATTEMPTS) {
+                throw conflict(id);
+            }
+        }
+    }
+
+    private ProductView afterUpdate(ProductView previous, Product product, Set<Long> ancestorIds) {
+        Long id = previous.id();
+        double newPrice = product.getPrice();
+        double delta = newPrice - previous.price();
+        List<Long> changedIds = new ArrayList<>();
+        changedIds.add(id);
+        if (delta != 0) {
+            if (!ancestorIds.isEmpty()) {
+                repository.shiftPrices(ancestorIds, delta);
+                changedIds.addAll(ancestorIds);
+            }
+            afterCommit(() -> closureIndex.changePrice(id, newPrice));
+        }
+        eventPublisher.publishEvent(new ProductChangeEvent(ProductChangeEvent.Type.UPDATED, changedIds));
+        return new ProductView(id, product.getName(), newPrice, previous.version() + 1, previous.sourceIds());
+    }
+
+    private static OptimisticLockingFailureException conflict(Long id) {
+        return new OptimisticLockingFailureException("Product " + id + " was modified concurrently");
+    }
+
+    /**
+     * Deletes a product. If it is a component of bundles it is removed from
+     * them first and their price lowered accordingly.
+     *
+     * @return false if there is no product with this id
+     */
+    @Transactional
+    public boolean delete(Long id) {
+        Optional<Product> existing = repository.findById(id);
+        if (existing.isEmpty()) {
+            return false;
+        }
+        Set<Long> ancestorIds = closureIndex.ancestorsOf(id);
+        if (!ancestorIds.isEmpty()) {
+            repository.shiftPrices(ancestorIds, -existing.get().getPrice());
+        }
+        repository.deleteSourceLinks(id);
+        repository.delete(existing.get());
+        afterCommit(() -> closureIndex.remove(id));
+        eventPublisher.publishEvent(ProductChangeEvent.deleted(id));
+        if (!ancestorIds.isEmpty()) {
+            eventPublisher.publishEvent(new ProductChangeEvent(ProductChangeEvent.Type.UPDATED,
+                    List.copyOf(ancestorIds)));
+        }
+        return true;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gbroche.tpspring1.dto.ProductSourceRow;
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes the whole catalog as NDJSON (one product per line) straight from a
+ * stream of projected rows, so memory does not grow with the size of the
+ * table.
+ */
+@Service
+public class ProductStreamWriter {
+    private static final int FLUSH_INTERVAL = 500;
+
+    private final ProductRepository repository;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter viewWriter;
+    private final CatalogVersion catalogVersion;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate primaryTransaction;
+
+    public ProductStreamWriter(ProductRepository repository, ObjectMapper objectMapper,
+            CatalogVersion catalogVersion, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.catalogVersion = catalogVersion;
+        this.objectMapper = objectMapper;
+        this.viewWriter = objectMapper.writerFor(ProductView.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Read from the primary right after a change, see {@link CatalogVersion}.
+     */
+    public void writeNdjson(OutputStream out) {
+        TransactionTemplate transaction = catalogVersion.changedRecently() ? primaryTransaction : readOnlyTransaction;
+        transaction.executeWithoutResult(status -> {
+            try (Stream<ProductSourceRow> rows = repository.streamAllRows();
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                int[] written = { 0 };
+                ProductView.groupRows(rows.iterator(), view -> {
+                    try {
+                        viewWriter.writeValue(generator, view);
+                        generator.writeRaw('\n');
+                        if (++written[0] % FLUSH_INTERVAL == 0) {
+                            generator.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,181 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warms the application up once started, before the readiness state switches
+ * to accepting traffic: the hot products are loaded in the cache, then the
+ * main read endpoints are called through the HTTP server so that the first
+ * real requests find the code compiled and the query plans cached.
+ *
+ * <p>
+ * The hot products are the ones read the most before the last shutdown when
+ * {@code products.warm-up.hot-products-file} is set, the first ones by id
+ * otherwise. The endpoint calls stop after {@code products.warm-up.iterations}
+ * rounds or once {@code products.warm-up.time-budget} is spent, whichever
+ * comes first, so a slow database cannot hold the readiness back for long.
+ */
+@Component
+public class ProductWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProductWarmUp.class);
+
+    private final ProductRepository repository;
+    private final ProductCache productCache;
+    private final Environment environment;
+    private final boolean enabled;
+    private final int hotProducts;
+    private final int iterations;
+    private final Duration timeBudget;
+    private final Optional<Path> hotProductsFile;
+
+    public ProductWarmUp(ProductRepository repository, ProductCache productCache, Environment environment,
+            @Value("${products.warm-up.enabled:false}") boolean enabled,
+            @Value("${products.warm-up.hot-products:1000}") int hotProducts,
+            @Value("${products.warm-up.iterations:20}") int iterations,
+            @Value("${products.warm-up.time-budget:10s}") Duration timeBudget,
+            @Value("${products.warm-up.hot-products-file:}") String hotProductsFile) {
+        this.repository = repository;
+        this.productCache = productCache;
+        this.environment = environment;
+        this.enabled = enabled;
+        this.hotProducts = hotProducts;
+        this.iterations = iterations;
+        this.timeBudget = timeBudget;
+        this.hotProductsFile = hotProductsFile.isBlank() ? Optional.empty() : Optional.of(Path.of(hotProductsFile));
+    }
+
+    /**
+     * A failure only costs the warm-up, never the startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            List<Long> hotIds = readHotIds().orElseGet(() -> repository.findIdsAfter(0, Limit.of(hotProducts)));
+            productCache.preload(hotIds);
+            int requests = 0;
+            Integer port = environment.getProperty("local.server.port", Integer.class);
+            if (port != null && !hotIds.isEmpty()) {
+                requests = callEndpoints("http://localhost:" + port + "/api/products", hotIds,
+                        start + timeBudget.toNanos());
+            }
+            LOGGER.info("Warm-up done in {} ms: {} products preloaded, {} requests",
+                    (System.nanoTime() - start) / 1_000_000, hotIds.size(), requests);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Warm-up failed, starting without it", e);
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void saveHotIds() {
+        if (!enabled || hotProductsFile.isEmpty()) {
+            return;
+        }
+        List<String> lines = productCache.hottestIds(hotProducts).stream().map(String::valueOf).toList();
+        try {
+            Path file = hotProductsFile.get().toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Files.write(file, lines);
+        } catch (IOException e) {
+            LOGGER.warn("Could not save the hot products to {}", hotProductsFile.get(), e);
+        }
+    }
+
+    private Optional<List<Long>> readHotIds() {
+        if (hotProductsFile.isEmpty() || !Files.isReadable(hotProductsFile.get())) {
+            return Optional.empty();
+        }
+        try {
+            List<Long> ids = Files.readAllLines(hotProductsFile.get()).stream()
+                    .filter(line -> !line.isBlank())
+                    .map(line -> Long.valueOf(line.strip()))
+                    .limit(hotProducts)
+                    .toList();
+            return ids.isEmpty() ? Optional.empty() : Optional.of(ids);
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Ignoring unreadable hot products file {}", hotProductsFile.get(), e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads pages, products, closures, filtered pages and searches, cycling
+     * over the hot products. The filtered listings are read in their paged
+     * form, unsorted, as clients are expected to. Products without a name only
+     * get their lookups warmed up.
+     *
+     * @param deadline {@link System#nanoTime()} after which no more round is
+     *                 started
+     * @return number of requests sent
+     */
+    private int callEndpoints(String baseUrl, List<Long> hotIds, long deadline) {
+        List<String> paths = new ArrayList<>();
+        paths.add("?limit=100");
+        for (ProductView view : hotViews(hotIds)) {
+            paths.add("/" + view.id());
+            paths.add("/" + view.id() + "/closure");
+            if (view.name() == null || view.name().isBlank()) {
+                continue;
+            }
+            String name = view.name();
+            String prefix = URLEncoder.encode(name.substring(0, Math.min(3, name.length())), StandardCharsets.UTF_8);
+            paths.add("/search?q=" + prefix);
+            paths.add("?namePrefix=" + prefix + "&maxPrice=" + view.price() + "&limit=100");
+        }
+        HttpClient client = HttpClient.newHttpClient();
+        int requests = 0;
+        try {
+            for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+                for (String path : paths) {
+                    client.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    requests++;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Warm-up requests stopped after {} of them", requests, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return requests;
+    }
+
+    private List<ProductView> hotViews(List<Long> hotIds) {
+        return hotIds.stream()
+                .limit(10)
+                .map(productCache::get)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+}
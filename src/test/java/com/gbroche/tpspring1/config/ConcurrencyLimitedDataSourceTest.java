@@ -0,0 +1,48 @@
+package com.gbroche.tpspring1.config;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConcurrencyLimitedDataSourceTest {
+
+        @Test
+        void testGetConnection_GivenLimitReached_TimesOutUntilAConnectionIsClosed() throws Exception {
+                DataSource target = mock(DataSource.class);
+                Connection targetConnection = mock(Connection.class);
+                when(target.getConnection()).thenReturn(targetConnection);
+                ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(target, 1,
+                                Duration.ofMillis(50));
+
+                Connection first = dataSource.getConnection();
+                assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+                first.close();
+                first.close();
+                verify(targetConnection).close();
+                assertEquals(1, dataSource.availablePermits());
+                dataSource.getConnection();
+                assertEquals(0, dataSource.availablePermits());
+        }
+
+        @Test
+        void testGetConnection_GivenTargetFailure_ReleasesSlot() throws Exception {
+                DataSource target = mock(DataSource.class);
+                when(target.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+                ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(target, 1,
+                                Duration.ofMillis(50));
+
+                assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+                assertEquals(1, dataSource.availablePermits());
+        }
+}
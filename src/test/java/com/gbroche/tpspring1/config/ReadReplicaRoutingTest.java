@@ -0,0 +1,154 @@
+package com.gbroche.tpspring1.config;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gbroche.tpspring1.service.CatalogVersion;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The replica is the same in-memory database, reached as a user only allowed
+ * to read it: a write routed to it fails, and revoking its rights shows which
+ * reads go through it. The listings only go through it once the last change is
+ * older than the max lag.
+ */
+@SpringBootTest(properties = {
+                "spring.datasource.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1"
+                                + ";INIT=CREATE USER IF NOT EXISTS REPLICA PASSWORD 'replica'"
+                                + "\\\\;GRANT SELECT ON SCHEMA PUBLIC TO REPLICA",
+                "products.datasource.replica.url=jdbc:h2:mem:routing",
+                "products.datasource.replica.username=REPLICA",
+                "products.datasource.replica.password=replica",
+                "products.datasource.replica.max-lag=5s" })
+@AutoConfigureMockMvc
+public class ReadReplicaRoutingTest {
+
+        @Autowired
+        private DataSource dataSource;
+
+        @Autowired
+        @Qualifier(ReadReplicaConfiguration.REPLICA_DATA_SOURCE)
+        private HikariDataSource replicaDataSource;
+
+        @Autowired
+        private PlatformTransactionManager transactionManager;
+
+        @Autowired
+        private MeterRegistry meterRegistry;
+
+        @Autowired
+        private CatalogVersion catalogVersion;
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private ObjectMapper objectMapper;
+
+        @Test
+        void testTransactions_OnlyReadOnlyOnesRunOnReplica() {
+                TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+                readOnlyTransaction.setReadOnly(true);
+
+                assertEquals("REPLICA", readOnlyTransaction.execute(status -> currentUser()));
+                assertEquals("SA", new TransactionTemplate(transactionManager).execute(status -> currentUser()));
+                assertEquals("SA", currentUser());
+        }
+
+        @Test
+        void testReplicaPool_IsBeanWithPoolMetrics() {
+                TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+                readOnlyTransaction.setReadOnly(true);
+                readOnlyTransaction.execute(status -> currentUser());
+
+                assertEquals("replica", replicaDataSource.getPoolName());
+                assertNotNull(meterRegistry.find("hikaricp.connections.active").tag("pool", "replica").gauge());
+        }
+
+        @Test
+        void testEndpoints_RightAfterChange_ListFromPrimaryAndWriteToPrimary() throws Throwable {
+                long id = createLamp();
+
+                revokeReplicaRights(() -> {
+                        mockMvc.perform(get("/api/products"))
+                                        .andExpect(status().isOk())
+                                        .andExpect(jsonPath("$[*].name", hasItem("lamp")));
+                        mockMvc.perform(get("/api/products/search").param("q", "lamp"))
+                                        .andExpect(jsonPath("$[*].id", hasItem((int) id)));
+                        mockMvc.perform(put("/api/products/" + id)
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content("{\"name\":\"desk lamp\",\"price\":25.0}"))
+                                        .andExpect(status().isOk());
+                        mockMvc.perform(get("/api/products/" + id))
+                                        .andExpect(status().isOk())
+                                        .andExpect(jsonPath("$.name").value("desk lamp"));
+                });
+        }
+
+        @Test
+        void testEndpoints_OnceMaxLagPassed_ListFromReplica() throws Throwable {
+                createLamp();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (catalogVersion.changedRecently()) {
+                        assertTrue(System.nanoTime() < deadline, "the last change stayed recent");
+                        Thread.sleep(100);
+                }
+                mockMvc.perform(get("/api/products"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[*].name", hasItem("lamp")));
+
+                revokeReplicaRights(() -> {
+                        assertThrows(Exception.class, () -> mockMvc.perform(get("/api/products")));
+                        assertThrows(Exception.class,
+                                        () -> mockMvc.perform(get("/api/products/search").param("q", "lamp")));
+                });
+        }
+
+        private long createLamp() throws Exception {
+                MvcResult created = mockMvc.perform(post("/api/products")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"lamp\",\"price\":20.0}"))
+                                .andExpect(status().isOk())
+                                .andReturn();
+                return objectMapper.readTree(created.getResponse().getContentAsString()).get("id").asLong();
+        }
+
+        private void revokeReplicaRights(Executable checks) throws Throwable {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+                jdbcTemplate.execute("REVOKE SELECT ON SCHEMA PUBLIC FROM REPLICA");
+                try {
+                        checks.execute();
+                } finally {
+                        jdbcTemplate.execute("GRANT SELECT ON SCHEMA PUBLIC TO REPLICA");
+                }
+        }
+
+        private String currentUser() {
+                return new JdbcTemplate(dataSource).queryForObject("select current_user", String.class);
+        }
+}
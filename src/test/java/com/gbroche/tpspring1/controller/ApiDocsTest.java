@@ -0,0 +1,27 @@
+package com.gbroche.tpspring1.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ApiDocsTest {
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Test
+        void testApiDocs_OnFirstRequest_DescribesProductEndpoints() throws Exception {
+                mockMvc.perform(get("/v3/api-docs"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.paths['/api/products/search'].get").exists())
+                                .andExpect(jsonPath("$.paths['/api/products/{id}'].put").exists())
+                                .andExpect(jsonPath("$.paths['/actuator/health']").doesNotExist());
+        }
+}
@@ -11,15 +11,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.gbroche.tpspring1.model.Product;
 import com.gbroche.tpspring1.repository.ProductRepository;
+import com.gbroche.tpspring1.service.ProductSearchIndex;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -28,12 +38,18 @@ public class ProductControllerTest {
         @Autowired
         private ProductRepository repository;
 
+        @Autowired
+        private ProductController controller;
+
         @Autowired
         private MockMvc mockMvc;
 
         @Autowired
         private ObjectMapper objectMapper;
 
+        @Autowired
+        private ProductSearchIndex searchIndex;
+
         @BeforeEach
         void setUp() {
                 repository.deleteAll();
@@ -49,6 +65,47 @@ public class ProductControllerTest {
                                 .andExpect(jsonPath("$.name").value("pen"));
         }
 
+        @Test
+        void testBulkCreate_GivenJsonArray_ImportsEveryProduct() throws Exception {
+                String requestContent = "[{\"name\":\"pen\",\"price\":1.0},{\"name\":\"pencil\",\"price\":0.5}]";
+
+                mockMvc.perform(post("/api/products/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.imported").value(2))
+                                .andExpect(jsonPath("$.batches.length()").value(1))
+                                .andExpect(jsonPath("$.error").doesNotExist());
+                assertEquals(2, repository.count());
+        }
+
+        @Test
+        void testBulkCreate_GivenNdjson_ImportsEveryProduct() throws Exception {
+                String requestContent = "{\"name\":\"pen\",\"price\":1.0}\n{\"name\":\"pencil\",\"price\":0.5}\n"
+                                + "{\"name\":\"notebook\",\"price\":2.5}\n";
+
+                mockMvc.perform(post("/api/products/bulk")
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.imported").value(3));
+                assertEquals(3, repository.count());
+        }
+
+        @Test
+        void testBulkCreate_GivenInvalidProduct_ReturnsBadRequestWithImportedBatches() throws Exception {
+                String requestContent = "[{\"name\":\"pen\",\"price\":1.0},{\"name\":\"pencil\",\"price\":\"cheap\"}]";
+
+                mockMvc.perform(post("/api/products/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestContent))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.imported").value(1))
+                                .andExpect(jsonPath("$.error").value(startsWith(
+                                                "Invalid product at position 2")));
+                assertEquals(1, repository.count());
+        }
+
         @Test
         void testGetById_GivenValidId_ReturnsCorrespondingProduct() throws Exception {
                 Product existingProduct = repository.save(new Product(null, "pen", 2.5, List.of()));
@@ -78,6 +135,52 @@ public class ProductControllerTest {
                                 .andExpect(jsonPath("$[2].name").value("notebook"));
         }
 
+        @Test
+        void testGetPage_GivenLimit_ReturnsKeysetPages() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "notebook", 2.5, List.of()));
+
+                mockMvc.perform(get("/api/products").param("limit", "2"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items.length()").value(2))
+                                .andExpect(jsonPath("$.items[0].name").value("pen"))
+                                .andExpect(jsonPath("$.items[1].name").value("pencil"))
+                                .andExpect(jsonPath("$.nextAfterId").value(p2.getId()));
+
+                mockMvc.perform(get("/api/products").param("limit", "2").param("afterId", p2.getId().toString()))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items.length()").value(1))
+                                .andExpect(jsonPath("$.items[0].id").value(p3.getId()))
+                                .andExpect(jsonPath("$.nextAfterId").doesNotExist());
+                assertTrue(p1.getId() < p2.getId());
+        }
+
+        @Test
+        void testGetPage_GivenLimitOutOfRange_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(get("/api/products").param("limit", "0"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("Page limit must be between 1 and 1000"));
+        }
+
+        @Test
+        void testStreamAll_GivenNdjsonAccept_WritesOneProductPerLine() throws Exception {
+                repository.save(new Product(null, "pen", 1.0, List.of()));
+                repository.save(new Product(null, "pencil", 0.5, List.of()));
+
+                MvcResult result = mockMvc.perform(get("/api/products").accept(MediaType.APPLICATION_NDJSON))
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+                String body = mockMvc.perform(asyncDispatch(result))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                                .andReturn().getResponse().getContentAsString();
+                String[] lines = body.split("\n");
+                assertEquals(2, lines.length);
+                assertEquals("pen", objectMapper.readTree(lines[0]).get("name").asText());
+                assertEquals("pencil", objectMapper.readTree(lines[1]).get("name").asText());
+        }
+
         @Test
         void testUpdate() throws Exception {
                 Product existingProduct = repository.save(new Product(null, "pen", 2.5, List.of()));
@@ -91,6 +194,88 @@ public class ProductControllerTest {
                                 .andExpect(jsonPath("$.price").value(3.0));
         }
 
+        @Test
+        void testUpdate_GivenStaleVersion_ReturnsConflictWithCurrentProduct() throws Exception {
+                long penId = createProduct("pen", 1.0);
+                mockMvc.perform(put("/api/products/" + penId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"pen\",\"price\":1.5,\"version\":0}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.version").value(1));
+
+                mockMvc.perform(put("/api/products/" + penId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"blue pen\",\"price\":2.0,\"version\":0}"))
+                                .andExpect(status().isConflict())
+                                .andExpect(jsonPath("$.name").value("pen"))
+                                .andExpect(jsonPath("$.price").value(1.5))
+                                .andExpect(jsonPath("$.version").value(1));
+
+                mockMvc.perform(put("/api/products/" + penId)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"blue pen\",\"price\":2.0,\"version\":1}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.version").value(2));
+        }
+
+        @Test
+        void testUpdate_GivenInvalidId_Returns404() throws Exception {
+                mockMvc.perform(put("/api/products/" + Long.MAX_VALUE)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"pen\",\"price\":1.0,\"version\":0}"))
+                                .andExpect(status().isNotFound());
+                mockMvc.perform(put("/api/products/" + Long.MAX_VALUE)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"pen\",\"price\":1.0}"))
+                                .andExpect(status().isNotFound());
+        }
+
+        @Test
+        void testGetById_GivenUpdatedSource_ReturnsFreshBundle() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Long bundleId = createBundleThroughApi(p1.getId(), p2.getId());
+                mockMvc.perform(get("/api/products/" + bundleId))
+                                .andExpect(jsonPath("$.price").value(1.5));
+
+                mockMvc.perform(put("/api/products/" + p1.getId())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"pen\",\"price\":1.2}"))
+                                .andExpect(status().isOk());
+
+                mockMvc.perform(get("/api/products/" + p1.getId()))
+                                .andExpect(jsonPath("$.price").value(1.2));
+                mockMvc.perform(get("/api/products/" + bundleId))
+                                .andExpect(jsonPath("$.price").value(1.7))
+                                .andExpect(jsonPath("$.sourceIds[0]").value(p1.getId()));
+        }
+
+        @Test
+        void testGetById_GivenDeletedProduct_ReturnsNotFound() throws Exception {
+                Product existingProduct = repository.save(new Product(null, "pen", 2.5, List.of()));
+                mockMvc.perform(get("/api/products/" + existingProduct.getId()))
+                                .andExpect(status().isOk());
+                mockMvc.perform(delete("/api/products/" + existingProduct.getId()))
+                                .andExpect(status().isNoContent());
+                mockMvc.perform(get("/api/products/" + existingProduct.getId()))
+                                .andExpect(status().isNotFound());
+        }
+
+        @Test
+        void testGetCacheStats_AfterRepeatedReads_CountsHits() throws Exception {
+                Product existingProduct = repository.save(new Product(null, "pen", 2.5, List.of()));
+                String statsBefore = mockMvc.perform(get("/api/products/cache/stats"))
+                                .andReturn().getResponse().getContentAsString();
+                long hitsBefore = objectMapper.readTree(statsBefore).get("hitCount").asLong();
+
+                mockMvc.perform(get("/api/products/" + existingProduct.getId()));
+                mockMvc.perform(get("/api/products/" + existingProduct.getId()));
+
+                mockMvc.perform(get("/api/products/cache/stats"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.hitCount").value(hitsBefore + 1));
+        }
+
         @Test
         void testDelete_GivenValidId_DeletesSuccessfully() throws Exception {
                 Product existingProduct = repository.save(new Product(null, "pen", 2.5, List.of()));
@@ -152,6 +337,156 @@ public class ProductControllerTest {
                                 .andExpect(jsonPath("$.price").value(expectedBundlePrice));
         }
 
+        @Test
+        void testGetAll_GivenFilters_ReturnsMatchingProductsInRequestedOrder() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "pen_holder", 4.0, List.of()));
+                repository.save(new Product(null, "notebook", 2.5, List.of()));
+                Product bundle = repository.save(new Product(null, "pen+pencil", 1.5, List.of(p1, p2)));
+
+                mockMvc.perform(get("/api/products").param("namePrefix", "pen").param("sort", "price,desc"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(4))
+                                .andExpect(jsonPath("$[0].id").value(p3.getId()))
+                                .andExpect(jsonPath("$[1].id").value(bundle.getId()))
+                                .andExpect(jsonPath("$[2].id").value(p1.getId()))
+                                .andExpect(jsonPath("$[3].id").value(p2.getId()));
+
+                mockMvc.perform(get("/api/products").param("namePrefix", "pen_"))
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].id").value(p3.getId()));
+
+                mockMvc.perform(get("/api/products").param("minPrice", "1.0").param("maxPrice", "2.5")
+                                .param("bundles", "false"))
+                                .andExpect(jsonPath("$.length()").value(2))
+                                .andExpect(jsonPath("$[0].name").value("pen"))
+                                .andExpect(jsonPath("$[1].name").value("notebook"));
+
+                mockMvc.perform(get("/api/products").param("bundles", "true"))
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].sourceIds.length()").value(2));
+        }
+
+        @Test
+        void testGetAll_GivenFilterMatchingMoreThanMaxPageSize_ReturnsBadRequest() throws Exception {
+                List<Product> products = new ArrayList<>();
+                for (int i = 0; i < ProductController.MAX_PAGE_SIZE; i++) {
+                        products.add(new Product(null, "pen" + i, i, List.of()));
+                }
+                repository.saveAll(products);
+
+                mockMvc.perform(get("/api/products").param("namePrefix", "pen").param("sort", "price,desc"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(ProductController.MAX_PAGE_SIZE))
+                                .andExpect(jsonPath("$[0].price").value(ProductController.MAX_PAGE_SIZE - 1));
+
+                repository.save(new Product(null, "pen" + ProductController.MAX_PAGE_SIZE, 0, List.of()));
+                mockMvc.perform(get("/api/products").param("namePrefix", "pen").param("sort", "price,desc"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("More than " + ProductController.MAX_PAGE_SIZE
+                                                + " products match, read them by pages with limit and afterId"));
+        }
+
+        @Test
+        void testGetPage_GivenFilter_PagesOverMatchingProducts() throws Exception {
+                repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "notebook", 2.5, List.of()));
+
+                mockMvc.perform(get("/api/products").param("limit", "1").param("maxPrice", "2.5")
+                                .param("afterId", p2.getId().toString()))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items.length()").value(1))
+                                .andExpect(jsonPath("$.items[0].id").value(p3.getId()))
+                                .andExpect(jsonPath("$.nextAfterId").value(p3.getId()));
+        }
+
+        @Test
+        void testSearch_GivenPrefixOrTypo_ReturnsBestMatchesFirst() throws Exception {
+                long keyboard = createProduct("Wireless Keyboard", 30.0);
+                long keyboardCover = createProduct("Keyboard cover", 5.0);
+                createProduct("Mouse", 25.0);
+
+                mockMvc.perform(get("/api/products/search").param("q", "keyboard"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(2))
+                                .andExpect(jsonPath("$[0].id").value(keyboard))
+                                .andExpect(jsonPath("$[1].id").value(keyboardCover));
+
+                mockMvc.perform(get("/api/products/search").param("q", "wire keybaord"))
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].name").value("Wireless Keyboard"));
+
+                mockMvc.perform(get("/api/products/search").param("q", "key").param("limit", "1"))
+                                .andExpect(jsonPath("$.length()").value(1));
+        }
+
+        @Test
+        void testSearch_GivenShortTermMatchingManyProducts_KeepsProductsMatchingEveryTerm() throws Exception {
+                List<Product> products = new ArrayList<>();
+                for (int i = 0; i < 1500; i++) {
+                        products.add(new Product(null, "apple " + i, 1.0, List.of()));
+                }
+                products.add(new Product(null, "avocado widget", 2.0, List.of()));
+                repository.saveAll(products);
+                searchIndex.rebuild();
+
+                mockMvc.perform(get("/api/products/search").param("q", "a widget"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].name").value("avocado widget"));
+        }
+
+        @Test
+        void testSearch_GivenUpdatedAndDeletedProducts_FollowsChanges() throws Exception {
+                long headset = createProduct("Headset", 90.0);
+                long monitor = createProduct("Monitor", 100.0);
+
+                mockMvc.perform(put("/api/products/" + headset)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"Gaming headphones\",\"price\":90.0}"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(delete("/api/products/" + monitor))
+                                .andExpect(status().isNoContent());
+
+                mockMvc.perform(get("/api/products/search").param("q", "headset"))
+                                .andExpect(jsonPath("$.length()").value(0));
+                mockMvc.perform(get("/api/products/search").param("q", "headphones"))
+                                .andExpect(jsonPath("$[0].id").value(headset));
+                mockMvc.perform(get("/api/products/search").param("q", "monitor"))
+                                .andExpect(jsonPath("$.length()").value(0));
+        }
+
+        @Test
+        void testSearch_GivenBlankQuery_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(get("/api/products/search").param("q", " "))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("Search query must not be blank"));
+        }
+
+        @Test
+        void testGetAll_GivenUnknownSortProperty_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(get("/api/products").param("sort", "sources"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("Products cannot be sorted by sources"));
+        }
+
+        @Test
+        void testGetAll_GivenBundle_ListsSourceIds() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product bundle = repository.save(new Product(null, "pen+pencil", 1.5, List.of(p1, p2)));
+
+                mockMvc.perform(get("/api/products"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(3))
+                                .andExpect(jsonPath("$[0].sourceIds.length()").value(0))
+                                .andExpect(jsonPath("$[2].id").value(bundle.getId()))
+                                .andExpect(jsonPath("$[2].sourceIds", containsInAnyOrder(
+                                                p1.getId().intValue(), p2.getId().intValue())));
+        }
+
         @Test
         void testCreateBundle_givenLessThanTwoId_ReturnsBadRequest() throws Exception {
                 Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
@@ -168,14 +503,14 @@ public class ProductControllerTest {
                 Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
                 Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
 
-                String requestContent = "[" + p1.getId() + "," + p2.getId() + ", 1000]";
+                String requestContent = "[" + p1.getId() + ", 1000," + p2.getId() + ", 1001]";
 
                 mockMvc.perform(post("/api/products/bundle")
                                 .contentType(MediaType.APPLICATION_JSON)
                                 .content(requestContent))
                                 .andExpect(status().isBadRequest())
                                 .andExpect(content().string(
-                                                "One of the product id given does not correspond to any product"));
+                                                "Some of the product ids given do not correspond to any product: [1000, 1001]"));
         }
 
         @Test
@@ -270,6 +605,183 @@ public class ProductControllerTest {
                 assertFalse(repository.findById(expectedBundleIdIfCreated).isPresent());
         }
 
+        @Test
+        void testCreateBundle_givenProductNestedTwoLevelsDeep_ReturnsBadRequest() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "notebook", 2.5, List.of()));
+                Long innerBundleId = createBundleThroughApi(p1.getId(), p2.getId());
+                Long outerBundleId = createBundleThroughApi(innerBundleId, p3.getId());
+
+                mockMvc.perform(post("/api/products/bundle")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[" + outerBundleId + "," + p1.getId() + "]"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        void testUpdate_GivenComponentPriceChange_PropagatesToEveryBundleContainingIt() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "notebook", 2.5, List.of()));
+                Long innerBundleId = createBundleThroughApi(p1.getId(), p2.getId());
+                Long outerBundleId = createBundleThroughApi(innerBundleId, p3.getId());
+
+                mockMvc.perform(put("/api/products/" + p1.getId())
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"pen\",\"price\":2.0}"))
+                                .andExpect(status().isOk());
+
+                assertEquals(2.5, repository.findById(innerBundleId).orElseThrow().getPrice());
+                assertEquals(5.0, repository.findById(outerBundleId).orElseThrow().getPrice());
+                mockMvc.perform(get("/api/products/" + outerBundleId + "/closure"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.price").value(5.0))
+                                .andExpect(jsonPath("$.leafIds.length()").value(3));
+        }
+
+        @Test
+        void testDelete_GivenBundleComponent_RemovesItFromBundles() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                Product p3 = repository.save(new Product(null, "notebook", 2.5, List.of()));
+                Long innerBundleId = createBundleThroughApi(p1.getId(), p2.getId());
+                Long outerBundleId = createBundleThroughApi(innerBundleId, p3.getId());
+
+                mockMvc.perform(delete("/api/products/" + p2.getId()))
+                                .andExpect(status().isNoContent());
+
+                mockMvc.perform(get("/api/products/" + innerBundleId))
+                                .andExpect(jsonPath("$.price").value(1.0))
+                                .andExpect(jsonPath("$.sourceIds.length()").value(1));
+                mockMvc.perform(get("/api/products/" + outerBundleId + "/closure"))
+                                .andExpect(jsonPath("$.price").value(3.5))
+                                .andExpect(jsonPath("$.leafIds.length()").value(2));
+        }
+
+        @Test
+        void testBatchPrice_GivenComponentsAndBundle_RepricesComponentsAndCarriesOverToBundles() throws Exception {
+                long pen = createProduct("pen", 1.0);
+                long pencil = createProduct("pencil", 0.5);
+                long notebook = createProduct("notebook", 2.0);
+                Long innerBundleId = createBundleThroughApi(pen, pencil);
+                Long outerBundleId = createBundleThroughApi(innerBundleId, notebook);
+
+                mockMvc.perform(post("/api/products/batch/price")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + pen + "," + pencil + "," + innerBundleId + ","
+                                                + Long.MAX_VALUE + "],\"factor\":2,\"delta\":1}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.chunks").value(1))
+                                .andExpect(jsonPath("$.items[0].status").value("UPDATED"))
+                                .andExpect(jsonPath("$.items[1].status").value("UPDATED"))
+                                .andExpect(jsonPath("$.items[2].status").value("SKIPPED_BUNDLE"))
+                                .andExpect(jsonPath("$.items[3].status").value("NOT_FOUND"))
+                                .andExpect(jsonPath("$.error").doesNotExist());
+
+                mockMvc.perform(get("/api/products/" + pen)).andExpect(jsonPath("$.price").value(3.0));
+                mockMvc.perform(get("/api/products/" + pencil)).andExpect(jsonPath("$.price").value(2.0));
+                mockMvc.perform(get("/api/products/" + innerBundleId)).andExpect(jsonPath("$.price").value(5.0));
+                mockMvc.perform(get("/api/products/" + outerBundleId)).andExpect(jsonPath("$.price").value(7.0));
+                mockMvc.perform(get("/api/products/" + outerBundleId + "/closure"))
+                                .andExpect(jsonPath("$.price").value(7.0));
+        }
+
+        @Test
+        void testBatchPrice_GivenFilter_RepricesMatchingProducts() throws Exception {
+                long pen = createProduct("pen", 1.0);
+                long notebook = createProduct("notebook", 2.0);
+
+                mockMvc.perform(post("/api/products/batch/price")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"filter\":{\"namePrefix\":\"note\"},\"delta\":-0.5}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items.length()").value(1))
+                                .andExpect(jsonPath("$.items[0].id").value(notebook));
+
+                mockMvc.perform(get("/api/products/" + notebook)).andExpect(jsonPath("$.price").value(1.5));
+                mockMvc.perform(get("/api/products/" + pen)).andExpect(jsonPath("$.price").value(1.0));
+        }
+
+        @Test
+        void testBatchDelete_GivenBundleAndOneOfItsComponents_SubtractsEachProductOnce() throws Exception {
+                long pen = createProduct("pen", 1.0);
+                long pencil = createProduct("pencil", 0.5);
+                long notebook = createProduct("notebook", 2.0);
+                long eraser = createProduct("eraser", 0.25);
+                Long innerBundleId = createBundleThroughApi(pen, pencil);
+                Long outerBundleId = createBundleThroughApi(innerBundleId, notebook);
+                Long otherBundleId = createBundleThroughApi(pen, eraser);
+
+                mockMvc.perform(post("/api/products/batch/delete")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + pen + "," + innerBundleId + "," + Long.MAX_VALUE + "]}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items[0].status").value("DELETED"))
+                                .andExpect(jsonPath("$.items[1].status").value("DELETED"))
+                                .andExpect(jsonPath("$.items[2].status").value("NOT_FOUND"));
+
+                assertFalse(repository.existsById(pen));
+                assertFalse(repository.existsById(innerBundleId));
+                mockMvc.perform(get("/api/products/" + outerBundleId))
+                                .andExpect(jsonPath("$.price").value(2.0))
+                                .andExpect(jsonPath("$.sourceIds.length()").value(1));
+                mockMvc.perform(get("/api/products/" + otherBundleId))
+                                .andExpect(jsonPath("$.price").value(0.25))
+                                .andExpect(jsonPath("$.sourceIds[0]").value(eraser));
+                mockMvc.perform(get("/api/products/" + outerBundleId + "/closure"))
+                                .andExpect(jsonPath("$.price").value(2.0))
+                                .andExpect(jsonPath("$.leafIds.length()").value(1));
+        }
+
+        @Test
+        void testBatchDuplicate_GivenIds_ReportsEveryCopy() throws Exception {
+                long pen = createProduct("pen", 1.0);
+                long pencil = createProduct("pencil", 0.5);
+
+                MvcResult result = mockMvc.perform(post("/api/products/batch/duplicate")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + pen + "," + Long.MAX_VALUE + "," + pencil + "]}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items[0].status").value("DUPLICATED"))
+                                .andExpect(jsonPath("$.items[1].status").value("NOT_FOUND"))
+                                .andExpect(jsonPath("$.items[1].duplicateId").doesNotExist())
+                                .andExpect(jsonPath("$.items[2].status").value("DUPLICATED"))
+                                .andReturn();
+
+                long penCopy = objectMapper.readTree(result.getResponse().getContentAsString())
+                                .at("/items/0/duplicateId").asLong();
+                mockMvc.perform(get("/api/products/" + penCopy))
+                                .andExpect(jsonPath("$.name").value("pen (Copy)"))
+                                .andExpect(jsonPath("$.price").value(1.0));
+                assertEquals(4, repository.count());
+        }
+
+        @Test
+        void testBatch_GivenInvalidSelection_ReturnsBadRequest() throws Exception {
+                mockMvc.perform(post("/api/products/batch/delete")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{}"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("Either ids or a filter must be given"));
+                mockMvc.perform(post("/api/products/batch/delete")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"filter\":{}}"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("The filter must have at least one criterion"));
+                mockMvc.perform(post("/api/products/batch/price")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[1]}"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(content().string("A price factor or delta is required"));
+        }
+
+        @Test
+        void testGetClosure_GivenInvalidId_Returns404() throws Exception {
+                mockMvc.perform(get("/api/products/1/closure"))
+                                .andExpect(status().isNotFound());
+        }
+
         @Test
         void testDoesBundleRequestCauseRecursion_GivenValidInput_ReturnsTrue() throws Exception {
                 Method method = ProductController.class
@@ -287,7 +799,7 @@ public class ProductControllerTest {
                 productsToTest.add(p4);
                 productsToTest.add(p5);
                 productsToTest.add(p6);
-                boolean result = (boolean) method.invoke(new ProductController(repository), productsToTest);
+                boolean result = (boolean) method.invoke(controller, productsToTest);
                 assertFalse(result);
         }
 
@@ -308,7 +820,103 @@ public class ProductControllerTest {
                 List<Product> productsToTest = new ArrayList<>();
                 productsToTest.add(p6);
                 productsToTest.add(p7);
-                boolean result = (boolean) method.invoke(new ProductController(repository), productsToTest);
+                boolean result = (boolean) method.invoke(controller, productsToTest);
                 assertTrue(result);
         }
+
+        @Test
+        void testGetById_WithCurrentETag_ReturnsNotModified() throws Exception {
+                long id = createProduct("eraser", 0.8);
+                String eTag = mockMvc.perform(get("/api/products/" + id))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("Cache-Control", "no-cache"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                mockMvc.perform(get("/api/products/" + id).header("If-None-Match", eTag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", eTag))
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(put("/api/products/" + id)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\":\"eraser\",\"price\":0.9}"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(get("/api/products/" + id).header("If-None-Match", eTag))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.price").value(0.9));
+        }
+
+        @Test
+        void testGetAll_WithCurrentETag_ReturnsNotModifiedUntilCatalogChanges() throws Exception {
+                createProduct("ruler", 1.2);
+                String eTag = mockMvc.perform(get("/api/products"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("Vary", "Accept"))
+                                .andReturn().getResponse().getHeader("ETag");
+                String ndjsonETag = mockMvc.perform(get("/api/products").accept(MediaType.APPLICATION_NDJSON))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getHeader("ETag");
+                assertFalse(eTag.equals(ndjsonETag), "both formats have the same ETag " + eTag);
+
+                mockMvc.perform(get("/api/products").header("If-None-Match", "\"other\", " + eTag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+                mockMvc.perform(get("/api/products?limit=10").header("If-None-Match", eTag))
+                                .andExpect(status().isNotModified());
+
+                createProduct("compass", 4.0);
+                mockMvc.perform(get("/api/products").header("If-None-Match", eTag))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[*].name", hasItem("compass")));
+        }
+
+        @Test
+        void testGetAll_AcceptingCbor_ReturnsCborWithItsOwnETag() throws Exception {
+                long id = createProduct("marker", 2.2);
+                MvcResult result = mockMvc.perform(get("/api/products").accept(MediaType.APPLICATION_CBOR))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                                .andExpect(header().string("ETag", endsWith("-cbor\"")))
+                                .andReturn();
+                JsonNode products = new CBORMapper().readTree(result.getResponse().getContentAsByteArray());
+                assertEquals(id, products.get(products.size() - 1).get("id").asLong());
+                assertEquals("marker", products.get(products.size() - 1).get("name").asText());
+        }
+
+        @Test
+        void testExport_AcceptingSmile_StreamsProductsAndEdges() throws Exception {
+                long p1 = createProduct("glue", 1.0);
+                long p2 = createProduct("tape", 2.0);
+                long bundleId = createBundleThroughApi(p1, p2);
+
+                MvcResult result = mockMvc.perform(get("/api/products/export").accept("application/x-jackson-smile"))
+                                .andExpect(request().asyncStarted())
+                                .andReturn();
+                MvcResult export = mockMvc.perform(asyncDispatch(result))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-jackson-smile"))
+                                .andReturn();
+                JsonNode document = new SmileMapper().readTree(export.getResponse().getContentAsByteArray());
+                assertEquals(3, document.get("products").size());
+                assertEquals(objectMapper.readTree("[[" + bundleId + "," + p1 + "],[" + bundleId + "," + p2 + "]]"),
+                                document.get("edges"));
+        }
+
+        private Long createBundleThroughApi(Long... productIds) throws Exception {
+                String response = mockMvc.perform(post("/api/products/bundle")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(productIds)))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getContentAsString();
+                return objectMapper.readTree(response).get("id").asLong();
+        }
+
+        private long createProduct(String name, double price) throws Exception {
+                MvcResult result = mockMvc.perform(post("/api/products")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(new Product(null, name, price, List.of()))))
+                                .andExpect(status().isOk())
+                                .andReturn();
+                return objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
+        }
 }
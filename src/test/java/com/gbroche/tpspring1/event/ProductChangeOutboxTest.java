@@ -0,0 +1,126 @@
+package com.gbroche.tpspring1.event;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductChangeRecordRepository;
+import com.gbroche.tpspring1.service.ProductService;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ProductChangeOutboxTest {
+
+        @TempDir
+        static Path directory;
+
+        @DynamicPropertySource
+        static void outboxFile(DynamicPropertyRegistry registry) {
+                registry.add("products.outbox.file", () -> directory.resolve("changes.ndjson").toString());
+        }
+
+        @Autowired
+        private ProductService productService;
+
+        @Autowired
+        private ProductChangeRecordRepository recordRepository;
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void testMutations_OnceCommitted_AreAppendedToFileInOrder() throws Exception {
+                Product product = productService.create(new Product(null, "notebook", 3.0, List.of()));
+                productService.update(product.getId(), new Product(null, "notebook", 3.5, List.of()));
+                productService.delete(product.getId());
+
+                String idsOfProduct = "\"productIds\":[" + product.getId() + "]";
+                List<String> lines = awaitLines(written -> written.stream()
+                                .filter(line -> line.contains(idsOfProduct))
+                                .count() == 3);
+                List<String> types = lines.stream()
+                                .filter(line -> line.contains(idsOfProduct))
+                                .map(line -> line.substring(line.indexOf("\"type\":\"") + 8, line.indexOf("\",")))
+                                .toList();
+                assertEquals(List.of("CREATED", "UPDATED", "DELETED"), types);
+                assertTrue(awaitEmptyOutbox(), "dispatched records were not removed from the outbox");
+        }
+
+        @Test
+        void testChangesStream_AfterCreate_SendsCreatedEvent() throws Exception {
+                HttpRequest request = HttpRequest
+                                .newBuilder(URI.create("http://localhost:" + port + "/api/products/changes"))
+                                .header("Accept", "text/event-stream")
+                                .build();
+                HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+                                .send(request, HttpResponse.BodyHandlers.ofLines());
+                assertEquals(200, response.statusCode());
+
+                Product product = productService.create(new Product(null, "stapler", 7.0, List.of()));
+
+                CompletableFuture<String> event = CompletableFuture.supplyAsync(() -> {
+                        Iterator<String> lines = response.body().iterator();
+                        String name = null;
+                        while (lines.hasNext()) {
+                                String line = lines.next();
+                                if (line.startsWith("event:")) {
+                                        name = line.substring(6);
+                                } else if (line.startsWith("data:")
+                                                && line.contains("\"productIds\":[" + product.getId() + "]")) {
+                                        return name;
+                                }
+                        }
+                        return null;
+                });
+                try {
+                        assertEquals("CREATED", event.get(10, TimeUnit.SECONDS));
+                } finally {
+                        response.body().close();
+                }
+        }
+
+        private List<String> awaitLines(Predicate<List<String>> done) throws Exception {
+                Path file = directory.resolve("changes.ndjson");
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (System.nanoTime() < deadline) {
+                        if (Files.exists(file)) {
+                                List<String> lines = Files.readAllLines(file);
+                                if (done.test(lines)) {
+                                        return lines;
+                                }
+                        }
+                        Thread.sleep(20);
+                }
+                return fail("changes were not written to " + file);
+        }
+
+        private boolean awaitEmptyOutbox() throws InterruptedException {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (System.nanoTime() < deadline) {
+                        if (recordRepository.count() == 0) {
+                                return true;
+                        }
+                        Thread.sleep(20);
+                }
+                return false;
+        }
+}
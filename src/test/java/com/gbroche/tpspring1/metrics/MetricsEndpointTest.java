@@ -0,0 +1,55 @@
+package com.gbroche.tpspring1.metrics;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+public class MetricsEndpointTest {
+
+        @Autowired
+        private ProductRepository repository;
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Test
+        void testPrometheus_AfterProductRequests_ExposesHotPathMetrics() throws Exception {
+                Product p1 = repository.save(new Product(null, "pen", 1.0, List.of()));
+                Product p2 = repository.save(new Product(null, "pencil", 0.5, List.of()));
+                mockMvc.perform(get("/api/products/" + p1.getId()))
+                                .andExpect(status().isOk());
+                mockMvc.perform(post("/api/products/bundle")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[" + p1.getId() + "," + p2.getId() + "]"))
+                                .andExpect(status().isOk());
+
+                mockMvc.perform(get("/actuator/prometheus"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(containsString(
+                                                "http_server_requests_seconds_bucket{error=\"none\",exception=\"none\",method=\"GET\",outcome=\"SUCCESS\",status=\"200\",uri=\"/api/products/{id}\"")))
+                                .andExpect(content().string(containsString(
+                                                "products_request_queries_count{method=\"POST\",uri=\"/api/products/bundle\"} 1")))
+                                .andExpect(content().string(containsString("products_bundle_size_count 1")))
+                                .andExpect(content().string(containsString("products_bundle_leaves_sum 2")))
+                                .andExpect(content().string(containsString("cache_gets_total{cache=\"products\"")))
+                                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                                .andExpect(content().string(containsString("hibernate_statements_total")))
+                                .andExpect(content().string(containsString("products_datasource_available_permits")));
+        }
+}
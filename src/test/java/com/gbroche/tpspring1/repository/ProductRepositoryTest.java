@@ -0,0 +1,158 @@
+package com.gbroche.tpspring1.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.gbroche.tpspring1.event.ProductChangeDispatcher;
+import com.gbroche.tpspring1.model.Product;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+public class ProductRepositoryTest {
+
+        @Autowired
+        private ProductRepository repository;
+
+        @Autowired
+        private MockMvc mockMvc;
+
+        @Autowired
+        private EntityManagerFactory entityManagerFactory;
+
+        // statistics are global, the outbox dispatch would add its own statements at random
+        @MockitoBean
+        private ProductChangeDispatcher dispatcher;
+
+        private Statistics statistics;
+
+        @BeforeEach
+        void setUp() {
+                repository.deleteAll();
+                statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        }
+
+        @Test
+        void testGetAll_GivenManyBundles_RunsConstantNumberOfQueries() throws Exception {
+                long queriesForFewBundles = countStatementsOfGetAll(2);
+                long queriesForManyBundles = countStatementsOfGetAll(40);
+                assertTrue(queriesForManyBundles <= queriesForFewBundles,
+                                "queries grew with the number of bundles: " + queriesForFewBundles + " -> "
+                                                + queriesForManyBundles);
+                assertTrue(queriesForManyBundles <= 1, "too many queries: " + queriesForManyBundles);
+        }
+
+        @Test
+        void testGetById_GivenNestedBundle_RunsConstantNumberOfQueries() throws Exception {
+                List<Product> innerBundles = saveBundles(20);
+                Product outerBundle = repository.save(new Product(null, "outer", 0, innerBundles));
+
+                statistics.clear();
+                mockMvc.perform(get("/api/products/" + outerBundle.getId()))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.sourceIds.length()").value(20));
+                long queries = statistics.getPrepareStatementCount();
+                assertTrue(queries <= 1, "too many queries: " + queries);
+        }
+
+        @Test
+        void testGetAll_GivenFilterAndSort_ProjectsMatchingProductsInSingleQuery() throws Exception {
+                saveBundles(40);
+
+                statistics.clear();
+                mockMvc.perform(get("/api/products").param("bundles", "true").param("sort", "name,desc"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(40))
+                                .andExpect(jsonPath("$[0].sourceIds.length()").value(2));
+                long queries = statistics.getPrepareStatementCount();
+                assertTrue(queries <= 1, "too many queries: " + queries);
+        }
+
+        @Test
+        void testCreateBundle_GivenManySources_RunsConstantNumberOfStatements() throws Exception {
+                long statementsForSmallBundle = countStatementsOfCreateBundle(2);
+                long statementsForLargeBundle = countStatementsOfCreateBundle(60);
+                assertTrue(statementsForLargeBundle <= statementsForSmallBundle,
+                                "statements grew with the bundle size: " + statementsForSmallBundle + " -> "
+                                                + statementsForLargeBundle);
+        }
+
+        @Test
+        void testBatchPrice_GivenManyBundleComponents_RunsConstantNumberOfStatements() throws Exception {
+                long statementsForFewComponents = countStatementsOfBatchPrice(3);
+                long statementsForManyComponents = countStatementsOfBatchPrice(60);
+                assertTrue(statementsForManyComponents <= statementsForFewComponents,
+                                "statements grew with the number of products: " + statementsForFewComponents
+                                                + " -> " + statementsForManyComponents);
+        }
+
+        private long countStatementsOfBatchPrice(int bundleCount) throws Exception {
+                List<String> leftIds = new ArrayList<>();
+                for (int i = 0; i < bundleCount; i++) {
+                        Product left = repository.save(new Product(null, "left" + i, 1.0, List.of()));
+                        Product right = repository.save(new Product(null, "right" + i, 2.0, List.of()));
+                        mockMvc.perform(post("/api/products/bundle")
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content("[" + left.getId() + "," + right.getId() + "]"))
+                                        .andExpect(status().isOk());
+                        leftIds.add(left.getId().toString());
+                }
+                statistics.clear();
+                mockMvc.perform(post("/api/products/batch/price")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"ids\":[" + String.join(",", leftIds) + "],\"delta\":1}"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.items.length()").value(bundleCount));
+                return statistics.getPrepareStatementCount();
+        }
+
+        private long countStatementsOfCreateBundle(int sourceCount) throws Exception {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < sourceCount; i++) {
+                        ids.add(repository.save(new Product(null, "x", 1.0, List.of())).getId().toString());
+                }
+                statistics.clear();
+                mockMvc.perform(post("/api/products/bundle")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[" + String.join(",", ids) + "]"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.sourceIds.length()").value(sourceCount));
+                return statistics.getPrepareStatementCount();
+        }
+
+        private long countStatementsOfGetAll(int bundleCount) throws Exception {
+                repository.deleteAll();
+                saveBundles(bundleCount);
+                statistics.clear();
+                mockMvc.perform(get("/api/products"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(bundleCount * 3));
+                return statistics.getPrepareStatementCount();
+        }
+
+        private List<Product> saveBundles(int bundleCount) {
+                List<Product> bundles = new ArrayList<>();
+                for (int i = 0; i < bundleCount; i++) {
+                        Product left = repository.save(new Product(null, "left" + i, 1.0, List.of()));
+                        Product right = repository.save(new Product(null, "right" + i, 2.0, List.of()));
+                        bundles.add(repository.save(new Product(null, "bundle" + i, 3.0, List.of(left, right))));
+                }
+                return bundles;
+        }
+}
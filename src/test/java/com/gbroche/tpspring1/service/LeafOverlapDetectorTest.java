@@ -0,0 +1,38 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LeafOverlapDetectorTest {
+
+        @Test
+        void testAnyOverlap_GivenDisjointSets_ReturnsFalse() {
+                long[] evens = LongStream.range(1, 5000).map(i -> i * 2).toArray();
+                long[] odds = LongStream.range(1, 5000).map(i -> i * 2 + 1).toArray();
+                long[] large = LongStream.range(20000, 30000).toArray();
+
+                assertFalse(LeafOverlapDetector.anyOverlap(List.of(evens, odds)));
+                assertFalse(LeafOverlapDetector.anyOverlap(List.of(evens, odds, large)));
+        }
+
+        @Test
+        void testAnyOverlap_GivenSharedLeaf_ReturnsTrue() {
+                long[] evens = LongStream.range(1, 5000).map(i -> i * 2).toArray();
+                long[] odds = LongStream.range(1, 5000).map(i -> i * 2 + 1).toArray();
+                long[] sharingWithEvens = new long[] { 3L * 1000 + 1, 9998 };
+
+                assertTrue(LeafOverlapDetector.anyOverlap(List.of(evens, sharingWithEvens)));
+                assertTrue(LeafOverlapDetector.anyOverlap(List.of(evens, odds, sharingWithEvens)));
+                assertTrue(LeafOverlapDetector.anyOverlap(List.of(new long[] { 1 }, new long[] { 2 }, new long[] { 1 })));
+        }
+
+        @Test
+        void testAnyOverlap_GivenSingleSet_ReturnsFalse() {
+                assertFalse(LeafOverlapDetector.anyOverlap(List.of(new long[] { 1, 2, 3 })));
+        }
+}
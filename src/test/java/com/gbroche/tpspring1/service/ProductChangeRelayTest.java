@@ -0,0 +1,154 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gbroche.tpspring1.Tpspring1Application;
+import com.gbroche.tpspring1.event.LocalProductChangeChannel;
+import com.gbroche.tpspring1.model.Product;
+
+/**
+ * Two nodes sharing an in-memory database and, through a parent context, a
+ * {@link LocalProductChangeChannel}. Node A writes, node B has to see it.
+ */
+public class ProductChangeRelayTest {
+
+        private static ConfigurableApplicationContext channelContext;
+        private static ConfigurableApplicationContext nodeA;
+        private static ConfigurableApplicationContext nodeB;
+
+        @BeforeAll
+        static void startNodes() {
+                channelContext = new AnnotationConfigApplicationContext(LocalProductChangeChannel.class);
+                nodeA = startNode("create-drop");
+                nodeB = startNode("none");
+        }
+
+        @AfterAll
+        static void stopNodes() {
+                nodeB.close();
+                nodeA.close();
+                channelContext.close();
+        }
+
+        @Test
+        void testUpdate_OnOneNode_IsSeenByCacheAndSearchOfTheOther() throws Exception {
+                ProductService serviceA = nodeA.getBean(ProductService.class);
+                ProductCache cacheB = nodeB.getBean(ProductCache.class);
+                CatalogVersion catalogVersionB = nodeB.getBean(CatalogVersion.class);
+                Long id = serviceA.create(new Product(null, "lamp", 20.0, List.of())).getId();
+                assertEquals(20.0, cacheB.get(id).orElseThrow().price());
+                String versionBefore = catalogVersionB.current();
+
+                serviceA.update(id, new Product(null, "desk lamp", 25.0, List.of()));
+
+                await(() -> cacheB.get(id).orElseThrow().price() == 25.0);
+                await(() -> nodeB.getBean(ProductSearchIndex.class).search("desk", 10).contains(id));
+                assertNotEquals(versionBefore, catalogVersionB.current());
+        }
+
+        @Test
+        void testBundle_ChangedOnOneNode_HasSameClosureOnTheOther() throws Exception {
+                ProductService serviceA = nodeA.getBean(ProductService.class);
+                BundleClosureIndex closuresB = nodeB.getBean(BundleClosureIndex.class);
+                Product pen = serviceA.create(new Product(null, "pen", 2.0, List.of()));
+                Product ink = serviceA.create(new Product(null, "ink", 3.0, List.of()));
+                Long bundleId = serviceA.createBundle(new ArrayList<>(List.of(pen, ink))).getId();
+                await(() -> closuresB.ancestorsOf(pen.getId()).contains(bundleId));
+                assertEquals(5.0, closuresB.find(bundleId).orElseThrow().price());
+
+                serviceA.update(pen.getId(), new Product(null, "pen", 4.0, List.of()));
+                await(() -> closuresB.find(bundleId).orElseThrow().price() == 7.0);
+
+                serviceA.delete(ink.getId());
+                await(() -> closuresB.find(bundleId).orElseThrow().price() == 4.0);
+                assertTrue(Arrays.equals(new long[] { pen.getId() }, closuresB.find(bundleId).orElseThrow().leafIds()));
+                assertEquals(4.0, nodeB.getBean(ProductCache.class).get(bundleId).orElseThrow().price());
+        }
+
+        @Test
+        void testChangesStream_OfEveryNode_SendsChangeDispatchedByEitherNode() throws Exception {
+                HttpResponse<Stream<String>> streamA = subscribeToChanges(nodeA);
+                HttpResponse<Stream<String>> streamB = subscribeToChanges(nodeB);
+                try {
+                        Long id = nodeA.getBean(ProductService.class)
+                                        .create(new Product(null, "stapler", 7.0, List.of())).getId();
+
+                        CompletableFuture<String> eventA = nextEventOf(streamA, id);
+                        CompletableFuture<String> eventB = nextEventOf(streamB, id);
+                        assertEquals("CREATED", eventA.get(10, TimeUnit.SECONDS));
+                        assertEquals("CREATED", eventB.get(10, TimeUnit.SECONDS));
+                } finally {
+                        streamA.body().close();
+                        streamB.body().close();
+                }
+        }
+
+        private static HttpResponse<Stream<String>> subscribeToChanges(ConfigurableApplicationContext node)
+                        throws IOException, InterruptedException {
+                String port = node.getEnvironment().getRequiredProperty("local.server.port");
+                HttpRequest request = HttpRequest
+                                .newBuilder(URI.create("http://localhost:" + port + "/api/products/changes"))
+                                .header("Accept", "text/event-stream")
+                                .build();
+                HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+                                .send(request, HttpResponse.BodyHandlers.ofLines());
+                assertEquals(200, response.statusCode());
+                return response;
+        }
+
+        private static CompletableFuture<String> nextEventOf(HttpResponse<Stream<String>> stream, Long productId) {
+                return CompletableFuture.supplyAsync(() -> {
+                        Iterator<String> lines = stream.body().iterator();
+                        String name = null;
+                        while (lines.hasNext()) {
+                                String line = lines.next();
+                                if (line.startsWith("event:")) {
+                                        name = line.substring(6);
+                                } else if (line.startsWith("data:")
+                                                && line.contains("\"productIds\":[" + productId + "]")) {
+                                        return name;
+                                }
+                        }
+                        return null;
+                });
+        }
+
+        private static ConfigurableApplicationContext startNode(String ddlAuto) {
+                return new SpringApplicationBuilder(Tpspring1Application.class)
+                                .parent(channelContext)
+                                .run("--server.port=0",
+                                                "--spring.datasource.url=jdbc:h2:mem:cluster;DB_CLOSE_DELAY=-1",
+                                                "--spring.jpa.hibernate.ddl-auto=" + ddlAuto);
+        }
+
+        private static void await(BooleanSupplier condition) throws InterruptedException {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!condition.getAsBoolean()) {
+                        assertTrue(System.nanoTime() < deadline, "the change was not applied by the other node");
+                        Thread.sleep(20);
+                }
+        }
+}
@@ -0,0 +1,86 @@
+package com.gbroche.tpspring1.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+/**
+ * The export is read by chunks of 2 here, so that every chunk boundary is
+ * crossed, products and edges alike.
+ */
+@SpringBootTest(properties = "products.export.chunk-size=2")
+public class ProductExportWriterTest {
+
+        @Autowired
+        private ProductRepository repository;
+
+        @Autowired
+        private ProductExportWriter exportWriter;
+
+        @Autowired
+        private ObjectMapper objectMapper;
+
+        private List<Long> productIds;
+        private Product bundle;
+
+        @BeforeEach
+        void setUp() {
+                repository.deleteAll();
+                List<Product> products = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                        products.add(repository.save(new Product(null, "item" + i, i + 0.5, List.of())));
+                }
+                bundle = repository.save(new Product(null, "set", 6.0, products.subList(0, 3)));
+                productIds = new ArrayList<>(products.stream().map(Product::getId).toList());
+                productIds.add(bundle.getId());
+        }
+
+        @Test
+        void testWrite_GivenJson_WritesEveryProductAndEdgeAcrossChunks() throws Exception {
+                JsonNode export = objectMapper.readTree(write(MediaType.APPLICATION_JSON));
+                assertExport(export);
+        }
+
+        @Test
+        void testWrite_GivenBinaryFormats_WritesSameDocument() throws Exception {
+                JsonNode json = objectMapper.readTree(write(MediaType.APPLICATION_JSON));
+                assertEquals(json, new CBORMapper().readTree(write(MediaType.APPLICATION_CBOR)));
+                assertEquals(json, new SmileMapper().readTree(write(ProductExportWriter.APPLICATION_SMILE)));
+        }
+
+        private void assertExport(JsonNode export) {
+                List<Long> exportedIds = new ArrayList<>();
+                export.get("products").forEach(product -> exportedIds.add(product.get("id").asLong()));
+                assertEquals(productIds, exportedIds);
+                assertEquals("item1", export.get("products").get(1).get("name").asText());
+                assertEquals(1.5, export.get("products").get(1).get("price").asDouble());
+
+                List<List<Long>> edges = new ArrayList<>();
+                export.get("edges").forEach(edge -> edges.add(List.of(edge.get(0).asLong(), edge.get(1).asLong())));
+                assertEquals(List.of(
+                                List.of(bundle.getId(), productIds.get(0)),
+                                List.of(bundle.getId(), productIds.get(1)),
+                                List.of(bundle.getId(), productIds.get(2))), edges);
+        }
+
+        private byte[] write(MediaType format) throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                exportWriter.write(format, out);
+                return out.toByteArray();
+        }
+}
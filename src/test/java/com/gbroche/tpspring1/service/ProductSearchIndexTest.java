@@ -0,0 +1,51 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ProductSearchIndexTest {
+
+        @Test
+        void testTokenize_GivenMixedName_ReturnsFoldedTerms() {
+                assertArrayEquals(new String[] { "stylo", "bleu", "2b" },
+                                ProductSearchIndex.tokenize("Stylo bleu+Stylo (2B)"));
+                assertArrayEquals(new String[] { "cafe", "creme" }, ProductSearchIndex.tokenize("Café-Crème"));
+                assertArrayEquals(new String[0], ProductSearchIndex.tokenize(" +- "));
+        }
+
+        @Test
+        void testEditDistance_CountsSwapsAsSingleEdit() {
+                assertEquals(0, ProductSearchIndex.editDistance("mouse", "mouse", 1));
+                assertEquals(1, ProductSearchIndex.editDistance("mosue", "mouse", 1));
+                assertEquals(1, ProductSearchIndex.editDistance("mous", "mouse", 1));
+                assertEquals(1, ProductSearchIndex.editDistance("moise", "mouse", 1));
+                assertEquals(2, ProductSearchIndex.editDistance("keybrd", "keyboard", 2));
+        }
+
+        @Test
+        void testEditDistance_GivenDistanceAboveBound_StopsAtBoundPlusOne() {
+                assertEquals(2, ProductSearchIndex.editDistance("monitor", "headset", 1));
+                assertEquals(3, ProductSearchIndex.editDistance("keyboard", "mouse", 2));
+        }
+
+        @Test
+        void testDeletions_ReturnsTermAndVariantsUpToDepth() {
+                assertEquals(Set.of("mouse"), ProductSearchIndex.deletions("mouse", 0));
+                assertEquals(Set.of("pen", "en", "pn", "pe"), ProductSearchIndex.deletions("pen", 1));
+                assertEquals(Set.of("pen", "en", "pn", "pe", "n", "e", "p"), ProductSearchIndex.deletions("pen", 2));
+        }
+
+        @Test
+        void testScore_KeepsBestMatchOfProductTerms() {
+                String[] terms = { "wireless", "keyboard", "keys" };
+                assertEquals(3, ProductSearchIndex.score("keys", terms));
+                assertEquals(2, ProductSearchIndex.score("key", terms));
+                assertEquals(1, ProductSearchIndex.score("keybaord", terms));
+                assertEquals(0, ProductSearchIndex.score("mouse", terms));
+                assertEquals(0, ProductSearchIndex.score("kez", terms));
+        }
+}
@@ -0,0 +1,115 @@
+package com.gbroche.tpspring1.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.gbroche.tpspring1.dto.ProductView;
+import com.gbroche.tpspring1.model.Product;
+import com.gbroche.tpspring1.repository.ProductRepository;
+
+/**
+ * Several threads increment the same price by reading it with its version and
+ * updating it, retrying on conflicts: no increment may be lost. The throughput
+ * under contention is measured by {@code ProductUpdateBenchmark}.
+ */
+@SpringBootTest
+public class ProductUpdateContentionTest {
+        private static final int THREADS = 8;
+        private static final int INCREMENTS_PER_THREAD = 50;
+
+        @Autowired
+        private ProductRepository repository;
+
+        @Autowired
+        private ProductService productService;
+
+        @BeforeEach
+        void setUp() {
+                repository.deleteAll();
+        }
+
+        @Test
+        void testUpdate_GivenConcurrentIncrementsOfPlainProduct_LosesNone() throws Exception {
+                Product product = productService.create(new Product(null, "pen", 0, List.of()));
+
+                incrementConcurrently(product.getId());
+
+                ProductView updated = repository.findViewById(product.getId()).orElseThrow();
+                assertEquals(THREADS * INCREMENTS_PER_THREAD, updated.price());
+                assertEquals(THREADS * INCREMENTS_PER_THREAD, updated.version());
+        }
+
+        @Test
+        void testUpdate_GivenConcurrentIncrementsOfBundleComponent_CarriesEveryOneOver() throws Exception {
+                Product pen = productService.create(new Product(null, "pen", 0, List.of()));
+                Product pencil = productService.create(new Product(null, "pencil", 1, List.of()));
+                Product bundle = productService.createBundle(new ArrayList<>(List.of(pen, pencil)));
+
+                incrementConcurrently(pen.getId());
+
+                assertEquals(THREADS * INCREMENTS_PER_THREAD,
+                                repository.findViewById(pen.getId()).orElseThrow().price());
+                ProductView updatedBundle = repository.findViewById(bundle.getId()).orElseThrow();
+                assertEquals(THREADS * INCREMENTS_PER_THREAD + 1, updatedBundle.price());
+                assertEquals(THREADS * INCREMENTS_PER_THREAD, updatedBundle.version());
+        }
+
+        @Test
+        void testUpdate_GivenStaleVersion_ThrowsWithoutWriting() {
+                Product product = productService.create(new Product(null, "pen", 1, List.of()));
+                productService.update(product.getId(), versioned("pen", 2, 0));
+
+                assertThrows(OptimisticLockingFailureException.class,
+                                () -> productService.update(product.getId(), versioned("pen", 3, 0)));
+                assertEquals(2, repository.findViewById(product.getId()).orElseThrow().price());
+        }
+
+        private void incrementConcurrently(Long id) throws Exception {
+                Callable<Void> incrementer = () -> {
+                        for (int i = 0; i < INCREMENTS_PER_THREAD; i++) {
+                                while (true) {
+                                        ProductView current = repository.findViewById(id).orElseThrow();
+                                        try {
+                                                productService.update(id, versioned(current.name(),
+                                                                current.price() + 1, current.version()));
+                                                break;
+                                        } catch (OptimisticLockingFailureException e) {
+                                                // read again and retry
+                                        }
+                                }
+                        }
+                        return null;
+                };
+                ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+                try {
+                        List<Future<Void>> futures = executor.invokeAll(Collections.nCopies(THREADS,
+                                        incrementer), 60, TimeUnit.SECONDS);
+                        for (Future<Void> future : futures) {
+                                future.get();
+                        }
+                } finally {
+                        executor.shutdownNow();
+                }
+        }
+
+        private static Product versioned(String name, double price, long version) {
+                Product product = new Product(null, name, price, List.of());
+                product.setVersion(version);
+                return product;
+        }
+}
@@ -0,0 +1,69 @@
+package com.gbroche.tpspring1.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.gbroche.tpspring1.Tpspring1Application;
+import com.gbroche.tpspring1.dto.CacheStatsView;
+import com.gbroche.tpspring1.model.Product;
+
+public class ProductWarmUpTest {
+
+        @TempDir
+        private Path directory;
+
+        @Test
+        void testRestart_GivenPersistentProfile_KeepsProductsAndPreloadsHotOnes() throws Exception {
+                Long productId;
+                try (ConfigurableApplicationContext context = startPersistent()) {
+                        productId = context.getBean(ProductService.class)
+                                        .create(new Product(null, "pen", 1.5, List.of())).getId();
+                        context.getBean(ProductCache.class).get(productId);
+                }
+                assertTrue(Files.readAllLines(directory.resolve("hot-products.txt")).contains(productId.toString()));
+
+                try (ConfigurableApplicationContext context = startPersistent()) {
+                        ProductCache productCache = context.getBean(ProductCache.class);
+                        CacheStatsView stats = productCache.stats();
+                        assertEquals(0, stats.missCount());
+                        assertTrue(stats.hitCount() > 0, "warm-up requests did not read the preloaded product");
+                        assertEquals(1.5, productCache.get(productId).orElseThrow().price());
+                }
+        }
+
+        @Test
+        void testRestart_GivenHotProductWithoutName_StartsAndPreloadsIt() throws Exception {
+                Long productId;
+                try (ConfigurableApplicationContext context = startPersistent()) {
+                        productId = context.getBean(ProductService.class)
+                                        .create(new Product(null, null, 2.0, List.of())).getId();
+                        context.getBean(ProductCache.class).get(productId);
+                }
+
+                try (ConfigurableApplicationContext context = startPersistent()) {
+                        ProductCache productCache = context.getBean(ProductCache.class);
+                        assertEquals(0, productCache.stats().missCount());
+                        assertEquals(2.0, productCache.get(productId).orElseThrow().price());
+                }
+        }
+
+        private ConfigurableApplicationContext startPersistent() {
+                return new SpringApplicationBuilder(Tpspring1Application.class)
+                                .profiles("persistent")
+                                .run("--server.port=0",
+                                                "--products.datasource.file=" + directory.resolve("products"),
+                                                "--products.warm-up.hot-products-file="
+                                                                + directory.resolve("hot-products.txt"),
+                                                "--products.outbox.file=" + directory.resolve("changes.ndjson"),
+                                                "--products.warm-up.iterations=2");
+        }
+}